@@ -0,0 +1,279 @@
+package org.folio.config;
+
+import io.vertx.core.Context;
+import io.vertx.core.json.JsonObject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+import javax.xml.namespace.QName;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+import org.apache.commons.io.IOUtils;
+import org.folio.session.NoopSession;
+import org.folio.util.DummySessionStore;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.common.SAMLVersion;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.AttributeStatement;
+import org.opensaml.saml.saml2.core.AttributeValue;
+import org.opensaml.saml.saml2.core.Audience;
+import org.opensaml.saml.saml2.core.AudienceRestriction;
+import org.opensaml.saml.saml2.core.AuthnContext;
+import org.opensaml.saml.saml2.core.AuthnContextClassRef;
+import org.opensaml.saml.saml2.core.AuthnStatement;
+import org.opensaml.saml.saml2.core.Conditions;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.NameID;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.Status;
+import org.opensaml.saml.saml2.core.StatusCode;
+import org.opensaml.saml.saml2.core.Subject;
+import org.opensaml.saml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml.saml2.core.SubjectConfirmationData;
+import org.opensaml.saml.saml2.encryption.Encrypter;
+import org.opensaml.security.x509.BasicX509Credential;
+import org.opensaml.xmlsec.encryption.support.DataEncryptionParameters;
+import org.opensaml.xmlsec.encryption.support.EncryptionConstants;
+import org.opensaml.xmlsec.encryption.support.KeyEncryptionParameters;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.pac4j.core.context.MockWebContext;
+import org.pac4j.saml.client.SAML2Client;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.UrlResource;
+
+/**
+ * SP and IdP fixtures of the benchmarks, generated from the keystore of the test configuration.
+ *
+ * <p>The IdP signs with the key of the SP keystore so that responses can be generated without
+ * a second keystore.
+ */
+public final class BenchmarkFixtures {
+
+  public static final String TENANT = "diku";
+  public static final String OKAPI_URL = "http://localhost:9130";
+  public static final String IDP_ENTITY_ID = "https://idp.example.org/benchmark";
+  public static final String IDP_SSO_URL = "https://idp.example.org/sso";
+  public static final String SAML_ATTRIBUTE_VALUE = "saml-user-id";
+
+  private final byte[] keystore;
+  private final String keystorePassword;
+  private final String privateKeyPassword;
+  private final BasicX509Credential credential;
+
+  private BenchmarkFixtures(byte[] keystore, String keystorePassword, String privateKeyPassword,
+      BasicX509Credential credential) {
+
+    this.keystore = keystore;
+    this.keystorePassword = keystorePassword;
+    this.privateKeyPassword = privateKeyPassword;
+    this.credential = credential;
+  }
+
+  /**
+   * Load the keystore and passwords of mock_content.json.
+   */
+  public static BenchmarkFixtures load() throws Exception {
+    JsonObject mock;
+    try (InputStream in = BenchmarkFixtures.class.getClassLoader().getResourceAsStream("mock_content.json")) {
+      if (in == null) {
+        throw new IOException("mock_content.json not found");
+      }
+      mock = new JsonObject(IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+    JsonObject entries = mock.getJsonArray("mocks").getJsonObject(0).getJsonObject("receivedData");
+    String keystoreBase64 = null;
+    String keystorePassword = null;
+    String privateKeyPassword = null;
+    for (Object o : entries.getJsonArray("configs")) {
+      JsonObject entry = (JsonObject) o;
+      switch (entry.getString("code")) {
+        case "keystore.file" -> keystoreBase64 = entry.getString("value");
+        case "keystore.password" -> keystorePassword = entry.getString("value");
+        case "keystore.privatekey.password" -> privateKeyPassword = entry.getString("value");
+        default -> { }
+      }
+    }
+    byte[] keystore = Base64.getDecoder().decode(keystoreBase64);
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    keyStore.load(new ByteArrayInputStream(keystore), keystorePassword.toCharArray());
+    String alias = keyStore.aliases().nextElement();
+    var certificate = (X509Certificate) keyStore.getCertificate(alias);
+    var privateKey = (PrivateKey) keyStore.getKey(alias, privateKeyPassword.toCharArray());
+    return new BenchmarkFixtures(keystore, keystorePassword, privateKeyPassword,
+        new BasicX509Credential(certificate, privateKey));
+  }
+
+  /**
+   * @return IdP metadata whose signing and encryption certificate is the SP certificate
+   */
+  public String idpMetadata() throws Exception {
+    String certificate = Base64.getEncoder().encodeToString(credential.getEntityCertificate().getEncoded());
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<EntityDescriptor entityID=\"" + IDP_ENTITY_ID + "\" xmlns=\"urn:oasis:names:tc:SAML:2.0:metadata\">"
+        + "<IDPSSODescriptor WantAuthnRequestsSigned=\"false\""
+        + " protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\">"
+        + "<KeyDescriptor><ds:KeyInfo xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\"><ds:X509Data>"
+        + "<ds:X509Certificate>" + certificate + "</ds:X509Certificate>"
+        + "</ds:X509Data></ds:KeyInfo></KeyDescriptor>"
+        + "<SingleSignOnService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\""
+        + " Location=\"" + IDP_SSO_URL + "\"/>"
+        + "<SingleSignOnService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-Redirect\""
+        + " Location=\"" + IDP_SSO_URL + "\"/>"
+        + "</IDPSSODescriptor></EntityDescriptor>";
+  }
+
+  /**
+   * An initialized client configured like {@link SamlClientLoader} does.
+   *
+   * @param samlBinding POST or REDIRECT
+   */
+  public SAML2Client client(Context vertxContext, String samlBinding) throws Exception {
+    var cfg = SamlClientLoader.getSaml2ConfigurationForByteArrayResource(new ByteArrayResource(keystore),
+        keystorePassword, privateKeyPassword, new UrlResource(IDP_SSO_URL),
+        new ByteArrayResource(idpMetadata().getBytes(StandardCharsets.UTF_8)));
+    var client = SamlClientLoader.assembleSaml2Client(OKAPI_URL, TENANT, cfg, samlBinding, vertxContext,
+        "callback-with-expiry");
+    client.init();
+    return client;
+  }
+
+  /**
+   * A POST to the assertion consumer service of the client with a fresh signed SAML Response.
+   *
+   * @param encrypt whether to encrypt the signed assertion for the SP
+   */
+  public MockWebContext callback(SAML2Client client, boolean encrypt) throws Exception {
+    // the assertion consumer service location of the SP metadata, it includes the client name parameter
+    String acs = client.getContextProvider()
+        .buildContext(client, MockWebContext.create(), new DummySessionStore(null, new NoopSession()))
+        .getSPAssertionConsumerService()
+        .getLocation();
+    String samlResponse = Base64.getEncoder().encodeToString(
+        samlResponse(acs, client.getConfiguration().getServiceProviderEntityId(), encrypt)
+          .getBytes(StandardCharsets.UTF_8));
+    return MockWebContext.create()
+        .setRequestMethod("POST")
+        .setFullRequestURL(acs)
+        .addRequestParameter("SAMLResponse", samlResponse);
+  }
+
+  private String samlResponse(String acs, String spEntityId, boolean encrypt) throws Exception {
+    Instant now = Instant.now();
+
+    Assertion assertion = build(Assertion.DEFAULT_ELEMENT_NAME);
+    assertion.setID("_" + UUID.randomUUID());
+    assertion.setIssueInstant(now);
+    assertion.setVersion(SAMLVersion.VERSION_20);
+    assertion.setIssuer(issuer());
+
+    NameID nameId = build(NameID.DEFAULT_ELEMENT_NAME);
+    nameId.setFormat(NameID.UNSPECIFIED);
+    nameId.setValue(SAML_ATTRIBUTE_VALUE);
+    SubjectConfirmationData confirmationData = build(SubjectConfirmationData.DEFAULT_ELEMENT_NAME);
+    confirmationData.setRecipient(acs);
+    confirmationData.setNotOnOrAfter(now.plusSeconds(300));
+    SubjectConfirmation confirmation = build(SubjectConfirmation.DEFAULT_ELEMENT_NAME);
+    confirmation.setMethod(SubjectConfirmation.METHOD_BEARER);
+    confirmation.setSubjectConfirmationData(confirmationData);
+    Subject subject = build(Subject.DEFAULT_ELEMENT_NAME);
+    subject.setNameID(nameId);
+    subject.getSubjectConfirmations().add(confirmation);
+    assertion.setSubject(subject);
+
+    Audience audience = build(Audience.DEFAULT_ELEMENT_NAME);
+    audience.setURI(spEntityId);
+    AudienceRestriction audienceRestriction = build(AudienceRestriction.DEFAULT_ELEMENT_NAME);
+    audienceRestriction.getAudiences().add(audience);
+    Conditions conditions = build(Conditions.DEFAULT_ELEMENT_NAME);
+    conditions.setNotBefore(now.minusSeconds(60));
+    conditions.setNotOnOrAfter(now.plusSeconds(300));
+    conditions.getAudienceRestrictions().add(audienceRestriction);
+    assertion.setConditions(conditions);
+
+    AuthnContextClassRef classRef = build(AuthnContextClassRef.DEFAULT_ELEMENT_NAME);
+    classRef.setURI(AuthnContext.PPT_AUTHN_CTX);
+    AuthnContext authnContext = build(AuthnContext.DEFAULT_ELEMENT_NAME);
+    authnContext.setAuthnContextClassRef(classRef);
+    AuthnStatement authnStatement = build(AuthnStatement.DEFAULT_ELEMENT_NAME);
+    authnStatement.setAuthnInstant(now);
+    authnStatement.setSessionIndex("_" + UUID.randomUUID());
+    authnStatement.setAuthnContext(authnContext);
+    assertion.getAuthnStatements().add(authnStatement);
+
+    XSString value = (XSString) XMLObjectProviderRegistrySupport.getBuilderFactory()
+        .getBuilderOrThrow(XSString.TYPE_NAME)
+        .buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+    value.setValue(SAML_ATTRIBUTE_VALUE);
+    Attribute attribute = build(Attribute.DEFAULT_ELEMENT_NAME);
+    attribute.setName("UserID");
+    attribute.getAttributeValues().add(value);
+    AttributeStatement attributeStatement = build(AttributeStatement.DEFAULT_ELEMENT_NAME);
+    attributeStatement.getAttributes().add(attribute);
+    assertion.getAttributeStatements().add(attributeStatement);
+
+    SignatureSupport.signObject(assertion, signingParameters());
+
+    Response response = build(Response.DEFAULT_ELEMENT_NAME);
+    response.setID("_" + UUID.randomUUID());
+    response.setIssueInstant(now);
+    response.setVersion(SAMLVersion.VERSION_20);
+    response.setDestination(acs);
+    response.setIssuer(issuer());
+    StatusCode statusCode = build(StatusCode.DEFAULT_ELEMENT_NAME);
+    statusCode.setValue(StatusCode.SUCCESS);
+    Status status = build(Status.DEFAULT_ELEMENT_NAME);
+    status.setStatusCode(statusCode);
+    response.setStatus(status);
+    if (encrypt) {
+      response.getEncryptedAssertions().add(encrypter().encrypt(assertion));
+    } else {
+      response.getAssertions().add(assertion);
+    }
+
+    SignatureSupport.signObject(response, signingParameters());
+    return SerializeSupport.nodeToString(response.getDOM());
+  }
+
+  private Issuer issuer() {
+    Issuer issuer = build(Issuer.DEFAULT_ELEMENT_NAME);
+    issuer.setValue(IDP_ENTITY_ID);
+    return issuer;
+  }
+
+  private SignatureSigningParameters signingParameters() {
+    var parameters = new SignatureSigningParameters();
+    parameters.setSigningCredential(credential);
+    parameters.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+    parameters.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+    parameters.setSignatureCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+    return parameters;
+  }
+
+  private Encrypter encrypter() {
+    var dataParameters = new DataEncryptionParameters();
+    dataParameters.setAlgorithm(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM);
+    var keyParameters = new KeyEncryptionParameters();
+    keyParameters.setEncryptionCredential(new BasicX509Credential(credential.getEntityCertificate()));
+    keyParameters.setAlgorithm(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
+    var encrypter = new Encrypter(dataParameters, keyParameters);
+    encrypter.setKeyPlacement(Encrypter.KeyPlacement.INLINE);
+    return encrypter;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends XMLObject> T build(QName elementName) {
+    return (T) XMLObjectSupport.buildXMLObject(elementName);
+  }
+}
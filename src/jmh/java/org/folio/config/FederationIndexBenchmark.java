@@ -0,0 +1,72 @@
+package org.folio.config;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse time and retained heap of a federation aggregate with 20k EntityDescriptors: the StAX index
+ * of {@link FederationMetadataStore} compared to a DOM. The retained heap is reported by the
+ * {@code retainedKb} counter, measured after garbage collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FederationIndexBenchmark {
+
+  private static final int ENTITIES = 20000;
+
+  private byte[] aggregate;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Retained {
+    public long retainedKb;
+  }
+
+  @Setup
+  public void setUp() {
+    aggregate = FederationMetadataStoreTest.aggregate(ENTITIES).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  @Benchmark
+  public Object dom(Retained retained) throws Exception {
+    long before = usedHeap();
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    Object dom = factory.newDocumentBuilder().parse(new ByteArrayInputStream(aggregate));
+    retained.retainedKb = (usedHeap() - before) / 1024;
+    return dom;
+  }
+
+  @Benchmark
+  public Object index(Retained retained) throws Exception {
+    long before = usedHeap();
+    Object index = FederationMetadataStore.parse(aggregate);
+    retained.retainedKb = (usedHeap() - before) / 1024;
+    return index;
+  }
+}
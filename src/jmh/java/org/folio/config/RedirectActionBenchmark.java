@@ -0,0 +1,56 @@
+package org.folio.config;
+
+import io.vertx.core.Vertx;
+import java.util.concurrent.TimeUnit;
+import org.folio.session.RelayStateSession;
+import org.folio.util.DummySessionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pac4j.core.context.MockWebContext;
+import org.pac4j.core.exception.http.RedirectionAction;
+import org.pac4j.saml.client.SAML2Client;
+
+/**
+ * {@link JsonReponseSaml2RedirectActionBuilder#getRedirectionAction} as called by POST /saml/login.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedirectActionBenchmark {
+
+  @Param({"POST", "REDIRECT"})
+  public String samlBinding;
+
+  private Vertx vertx;
+  private SAML2Client client;
+
+  @Setup
+  public void setup() throws Exception {
+    vertx = Vertx.vertx();
+    client = BenchmarkFixtures.load().client(vertx.getOrCreateContext(), samlBinding);
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public RedirectionAction redirectionAction() {
+    var sessionStore = new DummySessionStore(vertx, new RelayStateSession(vertx));
+    return client.getRedirectionAction(MockWebContext.create(), sessionStore).orElseThrow();
+  }
+}
@@ -0,0 +1,79 @@
+package org.folio.config;
+
+import io.vertx.core.Vertx;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.folio.service.UserService;
+import org.folio.session.NoopSession;
+import org.folio.util.DummySessionStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pac4j.core.context.MockWebContext;
+import org.pac4j.core.credentials.Credentials;
+import org.pac4j.saml.client.SAML2Client;
+import org.pac4j.saml.credentials.SAML2Credentials;
+
+/**
+ * SAML Response validation by {@link SAML2Client#getCredentials} as called by the callback:
+ * decoding, signature verification, decryption and assertion validation.
+ *
+ * <p>Each invocation validates a fresh response because the replay cache rejects a message ID
+ * seen before; generating and signing it is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseValidationBenchmark {
+
+  /** SIGNED: signed response and assertion; ENCRYPTED: signed response with signed encrypted assertion */
+  @Param({"SIGNED", "ENCRYPTED"})
+  public String assertion;
+
+  private Vertx vertx;
+  private BenchmarkFixtures fixtures;
+  private SAML2Client client;
+  private MockWebContext webContext;
+
+  @Setup
+  public void setup() throws Exception {
+    vertx = Vertx.vertx();
+    fixtures = BenchmarkFixtures.load();
+    client = fixtures.client(vertx.getOrCreateContext(), "POST");
+    // fail fast if the fixtures do not validate
+    nextResponse();
+    var credentials = (SAML2Credentials) validate().orElseThrow();
+    if (!BenchmarkFixtures.SAML_ATTRIBUTE_VALUE.equals(
+        UserService.getSamlAttributeValue(null, credentials.getUserProfile()))) {
+      throw new IllegalStateException("Unexpected profile " + credentials.getUserProfile());
+    }
+  }
+
+  @Setup(Level.Invocation)
+  public void nextResponse() throws Exception {
+    webContext = fixtures.callback(client, "ENCRYPTED".equals(assertion));
+  }
+
+  @TearDown
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Benchmark
+  public Optional<Credentials> validate() {
+    return client.getCredentials(webContext, new DummySessionStore(vertx, new NoopSession()));
+  }
+}
@@ -0,0 +1,59 @@
+package org.folio.config;
+
+import io.vertx.core.json.Json;
+import java.util.concurrent.TimeUnit;
+import org.folio.rest.jaxrs.model.SamlLogin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pac4j.core.exception.http.OkAction;
+
+/**
+ * Hand-over of the {@link SamlLogin} DTO from the redirect action builder to the login endpoint,
+ * including the final serialization by RMB. Compare the allocations reported by the default
+ * {@code gc} profiler: {@code mvn -Pjmh -DskipTests verify -Djmh.includes=SamlLoginAction}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamlLoginActionBenchmark {
+
+  private static final String SAML_REQUEST = "PHNhbWxwOkF1dGhuUmVxdWVzdCB4bWxuczpzYW1scD0idXJuOm9hc2lzOm5hbWVzOnRj"
+      .repeat(40);
+
+  private static SamlLogin samlLogin() {
+    return new SamlLogin()
+        .withBindingMethod(SamlLogin.BindingMethod.POST)
+        .withLocation("https://idp.example.org/sso")
+        .withSamlRequest(SAML_REQUEST)
+        .withRelayState("f47ac10b-58cc-4372-a567-0e02b2c3d479");
+  }
+
+  /**
+   * Encode into an OkAction, decode in the endpoint, encode by RMB.
+   */
+  @Benchmark
+  public String jsonRoundTrip() {
+    OkAction action = new OkAction(Json.encode(samlLogin()));
+    SamlLogin dto = Json.decodeValue(action.getContent(), SamlLogin.class);
+    return Json.encode(dto);
+  }
+
+  /**
+   * Carry the DTO, encode by RMB.
+   */
+  @Benchmark
+  public String samlLoginAction() {
+    SamlLoginAction action = new SamlLoginAction(samlLogin());
+    return Json.encode(action.getSamlLogin());
+  }
+}
@@ -0,0 +1,46 @@
+package org.folio.rest.impl;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Token cookie encoding of the callback response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CookieBenchmark {
+
+  private static final String TOKEN = "eyJhbGciOiJIUzI1NiJ9.eyJzdWIiOiJzYW1sdXNlciIsInVzZXJfaWQiOiI"
+      + "4MDkxZWM4MC0yOTBhLTRkNjEtYTA4Zi0wZDhmYTU3NmMwOTciLCJ0eXBlIjoiYWNjZXNzIn0.c2lnbmF0dXJl";
+
+  private String expiration;
+
+  @Setup
+  public void setup() {
+    expiration = Instant.now().plusSeconds(3600).toString();
+  }
+
+  @Benchmark
+  public String accessTokenCookie() {
+    return SamlAPI.accessTokenCookie(TOKEN, expiration, "/okapi");
+  }
+
+  @Benchmark
+  public String refreshTokenCookie() {
+    return SamlAPI.refreshTokenCookie(TOKEN, expiration, "/okapi");
+  }
+}
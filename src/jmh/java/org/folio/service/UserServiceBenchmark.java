@@ -0,0 +1,51 @@
+package org.folio.service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pac4j.saml.profile.SAML2Profile;
+
+/**
+ * User query building of the callback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserServiceBenchmark {
+
+  private SAML2Profile profile;
+
+  @Setup
+  public void setup() {
+    profile = new SAML2Profile();
+    profile.addAttribute("UserID", List.of("saml-user-id"));
+    profile.addAttribute("mail", List.of("jane.doe@example.org", "jd@example.org"));
+  }
+
+  @Benchmark
+  public String samlAttributeValue() {
+    return UserService.getSamlAttributeValue("mail", profile);
+  }
+
+  @Benchmark
+  public String cqlUserQuery() {
+    return UserService.getCqlUserQuery("externalSystemId", "saml-user-id");
+  }
+
+  @Benchmark
+  public String cqlUserQueryMasked() {
+    return UserService.getCqlUserQuery("personal.email", "jane.*doe?@example.org");
+  }
+}
@@ -0,0 +1,136 @@
+package org.folio.config;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import net.shibboleth.utilities.java.support.xml.DOMTypeSupport;
+import org.opensaml.saml.common.xml.SAMLConstants;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+import org.pac4j.saml.client.SAML2Client;
+import org.pac4j.saml.config.SAML2Configuration;
+
+/**
+ * Pre-rendered unsigned AuthnRequest of a client for the POST binding.
+ *
+ * <p>All of an AuthnRequest except its ID and IssueInstant is constant for a client, so the
+ * serialized request is split around these two values and new values are spliced in.
+ * A template only renders requests of the client configuration it has been created from,
+ * see {@link #matches(SAML2Client)}. Signed requests are not templated: the signature covers
+ * the ID and IssueInstant.
+ */
+public final class AuthnRequestTemplate {
+
+  private static volatile boolean enabled = false;
+
+  private final String fingerprint;
+  private final String destination;
+  private final String head;
+  private final String middle;
+  private final String tail;
+  private final boolean idFirst;
+
+  private AuthnRequestTemplate(String fingerprint, String destination, String head, String middle, String tail,
+    boolean idFirst) {
+
+    this.fingerprint = fingerprint;
+    this.destination = destination;
+    this.head = head;
+    this.middle = middle;
+    this.tail = tail;
+    this.idFirst = idFirst;
+  }
+
+  /**
+   * @param value value of the AUTHN_REQUEST_TEMPLATE environment variable: "true" to enable templates,
+   *              "false" or null to disable them
+   */
+  public static void setEnabled(String value) {
+    if (value != null && !"true".equals(value) && !"false".equals(value)) {
+      throw new IllegalArgumentException("Bad value of environmental variable AUTHN_REQUEST_TEMPLATE: \""
+          + value + "\"");
+    }
+    enabled = "true".equals(value);
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Create a template from an AuthnRequest built by OpenSAML.
+   *
+   * @param authnRequest the request
+   * @param xml the serialized request
+   * @return the template, or null if the client or the request cannot be templated
+   */
+  public static AuthnRequestTemplate of(SAML2Client client, AuthnRequest authnRequest, String xml) {
+    if (!isTemplatable(client.getConfiguration()) || authnRequest.getSignature() != null
+        || authnRequest.getID() == null || authnRequest.getIssueInstant() == null) {
+      return null;
+    }
+    String idAttribute = "ID=\"" + authnRequest.getID() + "\"";
+    String instantAttribute = "IssueInstant=\"" + DOMTypeSupport.instantToString(authnRequest.getIssueInstant()) + "\"";
+    int id = xml.indexOf(idAttribute);
+    int instant = xml.indexOf(instantAttribute);
+    if (id < 0 || instant < 0 || xml.indexOf(idAttribute, id + 1) >= 0
+        || xml.indexOf(instantAttribute, instant + 1) >= 0) {
+      return null;
+    }
+    // split at the attribute values
+    int idStart = id + "ID=\"".length();
+    int idEnd = idStart + authnRequest.getID().length();
+    int instantStart = instant + "IssueInstant=\"".length();
+    int instantEnd = instant + instantAttribute.length() - 1;
+    boolean idFirst = id < instant;
+    int firstStart = idFirst ? idStart : instantStart;
+    int firstEnd = idFirst ? idEnd : instantEnd;
+    int secondStart = idFirst ? instantStart : idStart;
+    int secondEnd = idFirst ? instantEnd : idEnd;
+    return new AuthnRequestTemplate(fingerprint(client), authnRequest.getDestination(),
+        xml.substring(0, firstStart), xml.substring(firstEnd, secondStart), xml.substring(secondEnd), idFirst);
+  }
+
+  private static boolean isTemplatable(SAML2Configuration cfg) {
+    return SAMLConstants.SAML2_POST_BINDING_URI.equals(cfg.getAuthnRequestBindingType())
+        && !cfg.isAuthnRequestSigned();
+  }
+
+  /**
+   * Configuration values of the client that go into the AuthnRequest.
+   */
+  static String fingerprint(SAML2Client client) {
+    SAML2Configuration cfg = client.getConfiguration();
+    return String.join("|",
+        client.getCallbackUrl(),
+        cfg.getServiceProviderEntityId(),
+        cfg.getAuthnRequestBindingType(),
+        Boolean.toString(cfg.isAuthnRequestSigned()),
+        Boolean.toString(cfg.isForceAuth()),
+        Boolean.toString(cfg.isPassive()),
+        Objects.toString(cfg.getNameIdPolicyFormat()),
+        Objects.toString(cfg.getAuthnContextClassRefs()),
+        Objects.toString(cfg.getComparisonType()),
+        Objects.toString(cfg.getProviderName()));
+  }
+
+  /**
+   * @return true if the client still has the configuration of this template
+   */
+  public boolean matches(SAML2Client client) {
+    return isTemplatable(client.getConfiguration()) && fingerprint.equals(fingerprint(client));
+  }
+
+  public String getDestination() {
+    return destination;
+  }
+
+  /**
+   * @return the serialized AuthnRequest with the ID and IssueInstant
+   */
+  public String render(String id, Instant issueInstant) {
+    String instant = DOMTypeSupport.instantToString(issueInstant.truncatedTo(ChronoUnit.MILLIS));
+    return idFirst
+        ? head + id + middle + instant + tail
+        : head + instant + middle + id + tail;
+  }
+}
@@ -0,0 +1,135 @@
+package org.folio.config;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.opensaml.xmlsec.encryption.support.DecryptionException;
+import org.opensaml.xmlsec.signature.support.SignatureException;
+import org.pac4j.saml.exceptions.SAMLIssuerException;
+import org.pac4j.saml.exceptions.SAMLSignatureValidationException;
+
+/**
+ * Decides whether a failed callback evicts the cached client of the tenant.
+ *
+ * <p>Only failures that a rebuilt client may fix evict it: IdP metadata resolution, signature trust,
+ * issuer and decryption failures. Failures of /users, /user-tenants, /token/sign or of the
+ * cookies are unrelated to the client; evicting it would add a client rebuild and a metadata fetch
+ * to each concurrent callback during a downstream outage.
+ *
+ * <p>Evictions of a tenant are rate limited to one per interval.
+ */
+public class ClientEvictionPolicy {
+
+  /** in seconds */
+  public static final long DEFAULT_INTERVAL = 10;
+
+  /** failures caused by the client's metadata, keys or trust engine */
+  private static final Set<Class<? extends Throwable>> CLIENT_FAILURES = Set.of(
+      SAMLSignatureValidationException.class,
+      SAMLIssuerException.class,
+      ResolverException.class,
+      DecryptionException.class,
+      SignatureException.class,
+      XMLSecurityException.class,
+      org.opensaml.security.SecurityException.class);
+
+  private static final int MAX_CAUSE_DEPTH = 20;
+
+  private static final ClientEvictionPolicy instance = new ClientEvictionPolicy(System::nanoTime);
+
+  private final ConcurrentMap<String, Long> lastEvictions = new ConcurrentHashMap<>(); // key: tenantId
+  private final LongSupplier nanoClock;
+  private volatile long intervalNanos = TimeUnit.SECONDS.toNanos(DEFAULT_INTERVAL);
+
+  public enum Decision {
+    /** evict the client */
+    EVICT("evicted"),
+    /** client failure, but the client of the tenant has been evicted recently */
+    RATE_LIMITED("rate_limited"),
+    /** failure unrelated to the client */
+    KEEP("kept");
+
+    private final String tagValue;
+
+    Decision(String tagValue) {
+      this.tagValue = tagValue;
+    }
+
+    public String getTagValue() {
+      return tagValue;
+    }
+  }
+
+  ClientEvictionPolicy(LongSupplier nanoClock) {
+    this.nanoClock = nanoClock;
+  }
+
+  public static ClientEvictionPolicy getInstance() {
+    return instance;
+  }
+
+  /**
+   * @param seconds value of the CLIENT_EVICTION_INTERVAL environment variable: minimum number of seconds
+   *                between two evictions of the client of a tenant, 0 for no limit, null for the default
+   */
+  public void setInterval(String seconds) {
+    try {
+      long value = seconds == null ? DEFAULT_INTERVAL : Long.parseLong(seconds);
+      if (value < 0) {
+        throw new NumberFormatException();
+      }
+      intervalNanos = TimeUnit.SECONDS.toNanos(value);
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable "
+          + "CLIENT_EVICTION_INTERVAL: \"" + seconds + "\"");
+    }
+  }
+
+  /**
+   * @return true if cause or one of its causes is a failure of the client
+   */
+  public static boolean isClientFailure(Throwable cause) {
+    Throwable t = cause;
+    for (int i = 0; t != null && i < MAX_CAUSE_DEPTH; i++, t = t.getCause()) {
+      for (Class<? extends Throwable> clientFailure : CLIENT_FAILURES) {
+        if (clientFailure.isInstance(t)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Decide whether the client of the tenant is evicted because of cause. An {@link Decision#EVICT}
+   * starts a new interval of the tenant.
+   */
+  public Decision decide(String tenantId, Throwable cause) {
+    if (tenantId == null || !isClientFailure(cause)) {
+      return Decision.KEEP;
+    }
+    long now = nanoClock.getAsLong();
+    boolean[] evict = new boolean[1];
+    lastEvictions.compute(tenantId, (tenant, last) -> {
+      if (last != null && now - last < intervalNanos) {
+        return last;
+      }
+      evict[0] = true;
+      return now;
+    });
+    return evict[0] ? Decision.EVICT : Decision.RATE_LIMITED;
+  }
+
+  /**
+   * Forget the last eviction of the tenant, for example after its configuration has changed.
+   */
+  public void reset(String tenantId) {
+    if (tenantId != null) {
+      lastEvictions.remove(tenantId);
+    }
+  }
+}
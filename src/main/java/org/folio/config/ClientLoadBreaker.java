@@ -0,0 +1,220 @@
+package org.folio.config;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.folio.metrics.SamlMetrics;
+
+/**
+ * Per-tenant circuit breaker of client loads.
+ *
+ * <p>After a number of consecutive failed loads of a tenant's client the breaker of the tenant opens:
+ * loads fail fast with {@link OpenException} without reading the configuration or building a client.
+ * When the retry interval has passed a single load is let through as a probe (half-open); its success
+ * closes the breaker, its failure opens it for another interval. Updating the configuration of the
+ * tenant closes the breaker, see {@link #reset(String)}.
+ */
+public class ClientLoadBreaker {
+
+  public static final int DEFAULT_THRESHOLD = 3;
+  /** in seconds */
+  public static final long DEFAULT_RETRY_INTERVAL = 30;
+
+  private static final ClientLoadBreaker instance = new ClientLoadBreaker(System::nanoTime);
+
+  private final ConcurrentMap<String, State> states = new ConcurrentHashMap<>(); // key: tenantId
+  private final LongSupplier nanoClock;
+  private volatile int threshold = DEFAULT_THRESHOLD;
+  private volatile long retryIntervalNanos = TimeUnit.SECONDS.toNanos(DEFAULT_RETRY_INTERVAL);
+
+  public static class OpenException extends RuntimeException {
+    private static final long serialVersionUID = 7340537453740028331L;
+    private final long retryAfter;
+
+    /**
+     * @param retryAfter seconds until the breaker lets the next load through
+     */
+    public OpenException(String message, long retryAfter) {
+      super(message);
+      this.retryAfter = retryAfter;
+    }
+
+    public long getRetryAfter() {
+      return retryAfter;
+    }
+  }
+
+  public enum Event {
+    OPENED("opened"),
+    REJECTED("rejected"),
+    PROBE("probe"),
+    CLOSED("closed");
+
+    private final String tagValue;
+
+    Event(String tagValue) {
+      this.tagValue = tagValue;
+    }
+
+    public String getTagValue() {
+      return tagValue;
+    }
+  }
+
+  /** guarded by the map's lock of the key */
+  private static class State {
+    private int failures;
+    private boolean open;
+    private boolean probing;
+    private long openedNanos;
+  }
+
+  ClientLoadBreaker(LongSupplier nanoClock) {
+    this.nanoClock = nanoClock;
+  }
+
+  public static ClientLoadBreaker getInstance() {
+    return instance;
+  }
+
+  /**
+   * @param failures value of the CLIENT_LOAD_FAILURE_THRESHOLD environment variable: number of consecutive
+   *                 failed loads that open the breaker, 0 disables the breaker, null for the default
+   */
+  public void setThreshold(String failures) {
+    try {
+      int value = failures == null ? DEFAULT_THRESHOLD : Integer.parseInt(failures);
+      if (value < 0) {
+        throw new NumberFormatException();
+      }
+      threshold = value;
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable "
+          + "CLIENT_LOAD_FAILURE_THRESHOLD: \"" + failures + "\"");
+    }
+  }
+
+  /**
+   * @param seconds value of the CLIENT_LOAD_RETRY_INTERVAL environment variable: number of seconds an
+   *                open breaker rejects loads before it lets a probe through, null for the default
+   */
+  public void setRetryInterval(String seconds) {
+    try {
+      long value = seconds == null ? DEFAULT_RETRY_INTERVAL : Long.parseLong(seconds);
+      if (value < 0) {
+        throw new NumberFormatException();
+      }
+      retryIntervalNanos = TimeUnit.SECONDS.toNanos(value);
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable "
+          + "CLIENT_LOAD_RETRY_INTERVAL: \"" + seconds + "\"");
+    }
+  }
+
+  /**
+   * Ask for permission to load the client of the tenant. Each permitted load must be followed
+   * by {@link #onSuccess(String)} or {@link #onFailure(String)}.
+   *
+   * @throws OpenException if the breaker of the tenant is open
+   */
+  public void acquire(String tenantId) {
+    if (threshold == 0) {
+      return;
+    }
+    long now = nanoClock.getAsLong();
+    Event[] event = new Event[1];
+    long[] retryAfter = new long[1];
+    states.computeIfPresent(tenantId, (tenant, state) -> {
+      if (!state.open) {
+        return state;
+      }
+      if (!state.probing && now - state.openedNanos >= retryIntervalNanos) {
+        state.probing = true;
+        event[0] = Event.PROBE;
+      } else {
+        event[0] = Event.REJECTED;
+        retryAfter[0] = retryAfter(state, now);
+      }
+      return state;
+    });
+    if (event[0] == null) {
+      return;
+    }
+    SamlMetrics.recordBreaker(tenantId, event[0]);
+    if (event[0] == Event.REJECTED) {
+      throw new OpenException("Loading the SAML client of tenant " + tenantId
+          + " failed repeatedly, next attempt in " + retryAfter[0] + " seconds", retryAfter[0]);
+    }
+  }
+
+  /**
+   * @return seconds until the open breaker of the tenant lets the next load through, at least 1;
+   *     0 if the breaker is closed
+   */
+  public long getRetryAfter(String tenantId) {
+    long now = nanoClock.getAsLong();
+    long[] retryAfter = new long[1];
+    states.computeIfPresent(tenantId, (tenant, state) -> {
+      if (state.open) {
+        retryAfter[0] = retryAfter(state, now);
+      }
+      return state;
+    });
+    return retryAfter[0];
+  }
+
+  /**
+   * The remaining open interval rounded up to whole seconds; 1 while a probe is running.
+   */
+  private long retryAfter(State state, long now) {
+    long remaining = retryIntervalNanos - (now - state.openedNanos);
+    return Math.max(1, (remaining + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+  }
+
+  public void onSuccess(String tenantId) {
+    State state = states.remove(tenantId);
+    if (state != null && state.open) {
+      SamlMetrics.recordBreaker(tenantId, Event.CLOSED);
+    }
+  }
+
+  public void onFailure(String tenantId) {
+    if (threshold == 0) {
+      return;
+    }
+    long now = nanoClock.getAsLong();
+    boolean[] opened = new boolean[1];
+    states.compute(tenantId, (tenant, state) -> {
+      State result = state == null ? new State() : state;
+      result.failures++;
+      if (result.probing || (!result.open && result.failures >= threshold)) {
+        result.open = true;
+        result.probing = false;
+        result.openedNanos = now;
+        opened[0] = true;
+      }
+      return result;
+    });
+    if (opened[0]) {
+      SamlMetrics.recordBreaker(tenantId, Event.OPENED);
+    }
+  }
+
+  /**
+   * Close the breaker of the tenant, for example after its configuration has changed.
+   */
+  public void reset(String tenantId) {
+    if (tenantId != null) {
+      states.remove(tenantId);
+    }
+  }
+
+  /**
+   * @return true if loads of the tenant's client are rejected or probed
+   */
+  public boolean isOpen(String tenantId) {
+    State state = states.get(tenantId);
+    return state != null && state.open;
+  }
+}
@@ -0,0 +1,162 @@
+package org.folio.config;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.dao.impl.ConfigurationsDaoImpl;
+
+/**
+ * Loads the clients of tenants with SAML configuration in the background so that the first login
+ * after a deployment does not wait for the configuration, the IdP metadata and the client initialization.
+ *
+ * <p>Runs on module startup for all tenants and on tenant enable for the enabled tenant, with at most
+ * {@link #setConcurrency(String) concurrency} loads at a time. Tenants without IdP URL or keystore are
+ * skipped. A failed warm-up is logged only; it does not count against the {@link ClientLoadBreaker}
+ * so that the first request of the tenant tries again.
+ */
+public class ClientWarmUp {
+
+  public static final int DEFAULT_CONCURRENCY = 4;
+
+  private static final Logger log = LogManager.getLogger(ClientWarmUp.class);
+  private static final ConcurrentMap<Vertx, Future<Void>> started = new ConcurrentHashMap<>();
+  private static volatile int concurrency = DEFAULT_CONCURRENCY;
+  private static volatile boolean readiness;
+
+  private ClientWarmUp() {
+  }
+
+  /**
+   * @param value value of the CLIENT_WARMUP_CONCURRENCY environment variable: maximum number of clients
+   *              loaded at the same time, 0 disables the warm-up, null for the default
+   */
+  public static void setConcurrency(String value) {
+    try {
+      int number = value == null ? DEFAULT_CONCURRENCY : Integer.parseInt(value);
+      if (number < 0) {
+        throw new NumberFormatException();
+      }
+      concurrency = number;
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable "
+          + "CLIENT_WARMUP_CONCURRENCY: \"" + value + "\"");
+    }
+  }
+
+  /**
+   * @param value value of the CLIENT_WARMUP_READINESS environment variable: "true" if the module
+   *              starts serving requests after the startup warm-up only, "false" or null otherwise
+   */
+  public static void setReadiness(String value) {
+    if (value == null) {
+      readiness = false;
+      return;
+    }
+    if (!"true".equals(value) && !"false".equals(value)) {
+      throw new IllegalArgumentException("Bad value of environmental variable CLIENT_WARMUP_READINESS: \""
+          + value + "\"");
+    }
+    readiness = Boolean.parseBoolean(value);
+  }
+
+  public static boolean isReadiness() {
+    return readiness;
+  }
+
+  /**
+   * Warm up the clients of all tenants, once per Vert.x instance.
+   *
+   * @return completes when all clients have been loaded or have failed, never fails
+   */
+  public static Future<Void> start(Context vertxContext) {
+    if (concurrency == 0) {
+      return Future.succeededFuture();
+    }
+    return started.computeIfAbsent(vertxContext.owner(), vertx -> {
+      long startNanos = System.nanoTime();
+      return ConfigurationsDaoImpl.getTenants(vertx)
+        .compose(tenants -> warmUp(vertxContext, tenants))
+        .onSuccess(x -> log.info("SAML client warm-up finished in {} ms",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)))
+        .recover(e -> {
+          log.warn("SAML client warm-up failed: {}", e.getMessage(), e);
+          return Future.succeededFuture();
+        });
+    });
+  }
+
+  /**
+   * Warm up the clients of the tenants.
+   *
+   * @return completes when all clients have been loaded or have failed, never fails
+   */
+  public static Future<Void> warmUp(Context vertxContext, List<String> tenants) {
+    if (concurrency == 0 || tenants.isEmpty()) {
+      return Future.succeededFuture();
+    }
+    Queue<String> queue = new ConcurrentLinkedQueue<>(tenants);
+    AtomicInteger loaded = new AtomicInteger();
+    List<Future<Void>> workers = new ArrayList<>();
+    for (int i = 0; i < Math.min(concurrency, tenants.size()); i++) {
+      workers.add(next(vertxContext, queue, loaded));
+    }
+    return Future.join(workers)
+      .onComplete(x -> log.info("Warmed up SAML clients of {} of {} tenants", loaded.get(), tenants.size()))
+      .<Void>mapEmpty()
+      .otherwiseEmpty();
+  }
+
+  private static Future<Void> next(Context vertxContext, Queue<String> queue, AtomicInteger loaded) {
+    String tenantId = queue.poll();
+    if (tenantId == null) {
+      return Future.succeededFuture();
+    }
+    return warmUp(vertxContext, tenantId)
+      .onSuccess(composite -> {
+        if (composite != null) {
+          loaded.incrementAndGet();
+        }
+      })
+      .<Void>mapEmpty()
+      .otherwiseEmpty()
+      .compose(x -> next(vertxContext, queue, loaded));
+  }
+
+  /**
+   * @return the client, null if the tenant has no complete SAML configuration
+   */
+  private static Future<SamlClientComposite> warmUp(Context vertxContext, String tenantId) {
+    SamlConfigHolder holder = SamlConfigHolder.getInstance();
+    SamlClientComposite existing = holder.findClient(tenantId);
+    if (existing != null) {
+      return Future.succeededFuture(existing);
+    }
+    if (ClientLoadBreaker.getInstance().isOpen(tenantId)) {
+      return Future.succeededFuture();
+    }
+    return new ConfigurationsDaoImpl().getConfiguration(vertxContext.owner(), tenantId)
+      .compose(samlConfiguration -> {
+        if (StringUtils.isAnyBlank(samlConfiguration.getIdpUrl(), samlConfiguration.getKeystore())) {
+          return Future.<SamlClientComposite>succeededFuture();
+        }
+        return holder.warmUpClient(tenantId,
+            () -> SamlClientLoader.loadFromConfiguration(samlConfiguration, tenantId, vertxContext))
+          .onFailure(e -> log.warn("SAML client warm-up of tenant {} failed: {}", tenantId, e.getMessage()));
+      }, e -> {
+        log.debug("No SAML configuration of tenant {}: {}", tenantId, e.getMessage());
+        return Future.succeededFuture();
+      });
+  }
+}
@@ -0,0 +1,162 @@
+package org.folio.config;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonObject;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.pubsub.PgSubscriber;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.dao.impl.ConfigurationsDaoImpl;
+import org.folio.rest.persist.Criteria.Criterion;
+import org.folio.rest.persist.PostgresClient;
+import org.folio.service.UserLookupCache;
+
+/**
+ * Drops the client of a tenant when another module instance has changed the tenant's SAML configuration.
+ *
+ * <p>A trigger on the configuration table of each tenant (configuration_notify.sql) sends the tenant id
+ * on the {@link #CHANNEL} channel. The listener compares the stored configuration with the configuration
+ * of the loaded client and drops the client only if they differ; the next request loads a new one.
+ * The instance that has stored the configuration already has an up-to-date client and keeps it.
+ *
+ * <p>One subscriber per Vert.x instance. It reconnects after a lost connection and then checks all
+ * loaded clients because notifications sent while disconnected are lost.
+ */
+public class ConfigurationChangeListener {
+
+  public static final String CHANNEL = "mod_login_saml_configuration";
+  /** in milliseconds */
+  static final long MAX_RECONNECT_DELAY = 30000;
+
+  private static final Logger log = LogManager.getLogger(ConfigurationChangeListener.class);
+  private static final ConcurrentMap<Vertx, PgSubscriber> subscribers = new ConcurrentHashMap<>();
+
+  private ConfigurationChangeListener() {
+  }
+
+  /**
+   * Subscribe to configuration changes, once per Vert.x instance.
+   *
+   * @return success when subscribed
+   */
+  public static Future<Void> start(Vertx vertx) {
+    boolean[] created = new boolean[1];
+    PgSubscriber subscriber;
+    try {
+      subscriber = subscribers.computeIfAbsent(vertx, v -> {
+        created[0] = true;
+        return subscriber(v);
+      });
+    } catch (RuntimeException e) {
+      log.error("Cannot listen for SAML configuration changes: {}", e.getMessage(), e);
+      return Future.failedFuture(e);
+    }
+    if (!created[0]) {
+      return Future.succeededFuture();
+    }
+    ((VertxInternal) vertx).addCloseHook(completion -> {
+      subscribers.remove(vertx);
+      subscriber.close();
+      completion.complete();
+    });
+    return subscriber.connect()
+      .onSuccess(x -> log.info("Listening for SAML configuration changes"))
+      .onFailure(e -> {
+        log.error("Cannot listen for SAML configuration changes: {}", e.getMessage(), e);
+        subscribers.remove(vertx, subscriber);
+        subscriber.close();
+      });
+  }
+
+  private static PgSubscriber subscriber(Vertx vertx) {
+    PgSubscriber subscriber = PgSubscriber.subscriber(vertx,
+        connectOptions(PostgresClient.getInstance(vertx).getConnectionConfig()));
+    subscriber.reconnectPolicy(retries -> Math.min(MAX_RECONNECT_DELAY, 1000L << Math.min(retries, 5)));
+    subscriber.channel(CHANNEL)
+      // on first subscribe and after each reconnect
+      .subscribeHandler(x -> SamlConfigHolder.getInstance().getConfig().keySet()
+          .forEach(tenantId -> revalidate(vertx, tenantId)))
+      .handler(tenantId -> revalidate(vertx, tenantId));
+    return subscriber;
+  }
+
+  static PgConnectOptions connectOptions(JsonObject config) {
+    PgConnectOptions options = new PgConnectOptions();
+    if (config.getString("host") != null) {
+      options.setHost(config.getString("host"));
+    }
+    if (config.getInteger("port") != null) {
+      options.setPort(config.getInteger("port"));
+    }
+    if (config.getString("database") != null) {
+      options.setDatabase(config.getString("database"));
+    }
+    if (config.getString("username") != null) {
+      options.setUser(config.getString("username"));
+    }
+    if (config.getString("password") != null) {
+      options.setPassword(config.getString("password"));
+    }
+    return options;
+  }
+
+  /**
+   * Drop the client of the tenant if its configuration differs from the stored configuration.
+   */
+  public static Future<Void> revalidate(Vertx vertx, String tenantId) {
+    SamlClientComposite composite = SamlConfigHolder.getInstance().findClient(tenantId);
+    if (composite == null) {
+      invalidate(tenantId);
+      return Future.succeededFuture();
+    }
+    return PostgresClient.getInstance(vertx, tenantId)
+      .get(ConfigurationsDaoImpl.CONFIGURATION_TABLE, SamlConfiguration.class, new Criterion(), false)
+      .map(results -> {
+        if (!isUnchanged(composite.getConfiguration(), results.getResults())) {
+          log.info("SAML configuration of tenant {} has changed, dropping its client", tenantId);
+          invalidate(tenantId);
+          // a client loaded meanwhile has been built from the changed configuration
+          SamlConfigHolder.getInstance().removeClient(tenantId, composite);
+        }
+        return (Void) null;
+      })
+      .onFailure(e -> log.warn("Cannot check SAML configuration of tenant {}: {}", tenantId, e.getMessage()));
+  }
+
+  private static boolean isUnchanged(SamlConfiguration loaded, List<SamlConfiguration> stored) {
+    return stored.size() == 1 && isUnchanged(loaded, stored.get(0));
+  }
+
+  /**
+   * Compare the fields the client is built from and uses. Other fields like metadata.invalidated
+   * change on GET /saml/regenerate and keystore generation without affecting the client.
+   */
+  static boolean isUnchanged(SamlConfiguration loaded, SamlConfiguration stored) {
+    return Objects.equals(loaded.getIdpUrl(), stored.getIdpUrl())
+        && Objects.equals(loaded.getKeystore(), stored.getKeystore())
+        && Objects.equals(loaded.getKeystorePassword(), stored.getKeystorePassword())
+        && Objects.equals(loaded.getPrivateKeyPassword(), stored.getPrivateKeyPassword())
+        && Objects.equals(loaded.getSamlBinding(), stored.getSamlBinding())
+        && Objects.equals(loaded.getSamlAttribute(), stored.getSamlAttribute())
+        && Objects.equals(loaded.getUserProperty(), stored.getUserProperty())
+        && Objects.equals(loaded.getCallback(), stored.getCallback())
+        && Objects.equals(loaded.getIdpMetadata(), stored.getIdpMetadata())
+        && Objects.equals(loaded.getIdpEntityId(), stored.getIdpEntityId())
+        && Objects.equals(loaded.getOkapiUrl(), stored.getOkapiUrl())
+        && Objects.equals(loaded.getUseSecureTokens(), stored.getUseSecureTokens());
+  }
+
+  private static void invalidate(String tenantId) {
+    UserLookupCache.getInstance().invalidate(tenantId);
+    SamlCheckCache.getInstance().invalidate(tenantId);
+    ClientLoadBreaker.getInstance().reset(tenantId);
+  }
+}
@@ -0,0 +1,245 @@
+package org.folio.config;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.sqlclient.Tuple;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.rest.persist.PostgresClient;
+import org.opensaml.storage.ReplayCache;
+import org.pac4j.core.context.WebContext;
+import org.pac4j.saml.exceptions.SAMLReplayException;
+import org.pac4j.saml.replay.ReplayCacheProvider;
+
+/**
+ * Replay cache of SAML message ids shared by all module instances.
+ *
+ * <p>pac4j checks the id of each SAML response synchronously on the event loop. The check is answered
+ * by a near cache of the ids this instance has seen. After the validation the client attaches the id
+ * of the response to the request with {@link #attach(WebContext, long)} and the caller confirms it
+ * with {@link #confirm(Vertx, String, WebContext)}: an INSERT into the unlogged replay_cache table of
+ * the tenant that fails if another instance has already seen the id. A request without attached id
+ * fails.
+ *
+ * <p>Expired rows are deleted in batches, at most once per cleanup interval and tenant.
+ */
+public class DistributedReplayCache {
+
+  public static final String TABLE = "replay_cache";
+  /** maximum number of ids in the near cache */
+  static final int NEAR_CACHE_SIZE = 100000;
+  /** maximum number of rows deleted by a cleanup */
+  static final int CLEANUP_BATCH = 1000;
+  /** in seconds */
+  static final long CLEANUP_INTERVAL = 60;
+
+  private static final Logger log = LogManager.getLogger(DistributedReplayCache.class);
+  private static final String CHECK_ATTRIBUTE = DistributedReplayCache.class.getName() + ".check";
+  private static final XMLInputFactory XML_INPUT_FACTORY = xmlInputFactory();
+  private static final DistributedReplayCache instance = new DistributedReplayCache(System::currentTimeMillis);
+
+  /** key: tenantId + '\0' + id, value: expiry in epoch milliseconds */
+  private final ConcurrentMap<String, Long> nearCache = new ConcurrentHashMap<>();
+  /** key: tenantId, value: last cleanup in epoch milliseconds */
+  private final ConcurrentMap<String, Long> lastCleanups = new ConcurrentHashMap<>();
+  private final LongSupplier clock;
+  private volatile long lastPurge;
+
+  /**
+   * The id of a validated message that waits for its confirmation.
+   */
+  public static class Check {
+    private final String id;
+    private final Instant expires;
+
+    public Check(String messageId, Instant expires) {
+      this.id = SharedContent.sha256(messageId.getBytes(StandardCharsets.UTF_8));
+      this.expires = expires;
+    }
+
+    Instant getExpires() {
+      return expires;
+    }
+  }
+
+  DistributedReplayCache(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  public static DistributedReplayCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * The replay cache of the tenant's client, see {@link org.pac4j.saml.config.SAML2Configuration#setReplayCache}.
+   */
+  public ReplayCacheProvider provider(String tenantId) {
+    ReplayCache replayCache = (context, key, expires) -> check(tenantId, context, key, expires);
+    return () -> replayCache;
+  }
+
+  /**
+   * @return false if the message has been seen by this instance and has not expired
+   */
+  boolean check(String tenantId, String context, String key, Instant expires) {
+    long now = clock.getAsLong();
+    purge(now);
+    String id = SharedContent.sha256((context + '\0' + key).getBytes(StandardCharsets.UTF_8));
+    long expiry = expires.toEpochMilli();
+    boolean[] seen = new boolean[1];
+    nearCache.compute(tenantId + '\0' + id, (k, last) -> {
+      if (last != null && last > now) {
+        seen[0] = true;
+        return last;
+      }
+      return expiry;
+    });
+    if (seen[0]) {
+      log.warn("Replayed SAML message of tenant {}", tenantId);
+      return false;
+    }
+    return true;
+  }
+
+  private void purge(long now) {
+    if (now - lastPurge < TimeUnit.SECONDS.toMillis(CLEANUP_INTERVAL) && nearCache.size() < NEAR_CACHE_SIZE) {
+      return;
+    }
+    lastPurge = now;
+    nearCache.values().removeIf(expiry -> expiry <= now);
+    if (nearCache.size() >= NEAR_CACHE_SIZE) {
+      // the database still detects the replays
+      nearCache.clear();
+    }
+  }
+
+  /**
+   * Attach the message id of the validated SAMLResponse parameter of the request to the request.
+   *
+   * @param acceptedSkew in seconds, how long after its IssueInstant the response is accepted
+   * @throws SAMLReplayException if the response has no message id
+   */
+  public static void attach(WebContext context, long acceptedSkew) {
+    String samlResponse = context.getRequestParameter("SAMLResponse").orElse(null);
+    context.setRequestAttribute(CHECK_ATTRIBUTE, parseResponse(samlResponse, acceptedSkew));
+  }
+
+  /**
+   * Attach the message id to the request.
+   */
+  public static void attach(WebContext context, String messageId, Instant expires) {
+    context.setRequestAttribute(CHECK_ATTRIBUTE, new Check(messageId, expires));
+  }
+
+  static Check parseResponse(String samlResponse, long acceptedSkew) {
+    if (samlResponse == null) {
+      throw new SAMLReplayException("No SAMLResponse");
+    }
+    try {
+      byte[] xml = Base64.getMimeDecoder().decode(samlResponse);
+      XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(xml));
+      try {
+        reader.nextTag();
+        String id = reader.getAttributeValue(null, "ID");
+        String issueInstant = reader.getAttributeValue(null, "IssueInstant");
+        if (id == null) {
+          throw new SAMLReplayException("No ID in SAMLResponse");
+        }
+        Instant issued = issueInstant == null ? Instant.now() : Instant.parse(issueInstant);
+        return new Check(id, issued.plusSeconds(acceptedSkew));
+      } finally {
+        reader.close();
+      }
+    } catch (IllegalArgumentException | DateTimeParseException | XMLStreamException e) {
+      throw new SAMLReplayException("Cannot read the message id of the SAMLResponse: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Record the message id attached to the request in the database of the tenant.
+   *
+   * @return failed with {@link SAMLReplayException} if no message id is attached or another instance
+   *     has seen the message
+   */
+  public Future<Void> confirm(Vertx vertx, String tenantId, WebContext context) {
+    return confirm(vertx, tenantId, (Check) context.getRequestAttribute(CHECK_ATTRIBUTE).orElse(null));
+  }
+
+  /**
+   * Record the message id in the database of the tenant.
+   *
+   * @param check null fails
+   */
+  public Future<Void> confirm(Vertx vertx, String tenantId, Check check) {
+    if (check == null) {
+      return Future.failedFuture(new SAMLReplayException("No message id to check for replay"));
+    }
+    String table = table(tenantId);
+    return PostgresClient.getInstance(vertx, tenantId)
+      .execute("INSERT INTO " + table + " AS r (id, expires) VALUES ($1, $2)"
+          + " ON CONFLICT (id) DO UPDATE SET expires = EXCLUDED.expires WHERE r.expires < now()"
+          + " RETURNING id",
+          Tuple.of(check.id, check.expires.atOffset(ZoneOffset.UTC)))
+      .compose(rows -> {
+        if (rows.rowCount() == 0) {
+          log.warn("Replayed SAML message of tenant {} seen by another module instance", tenantId);
+          return Future.failedFuture(new SAMLReplayException("Rejecting replayed message ID '" + check.id + "'"));
+        }
+        cleanup(vertx, tenantId);
+        return Future.<Void>succeededFuture();
+      });
+  }
+
+  private void cleanup(Vertx vertx, String tenantId) {
+    long now = clock.getAsLong();
+    boolean[] due = new boolean[1];
+    lastCleanups.compute(tenantId, (tenant, last) -> {
+      if (last != null && now - last < TimeUnit.SECONDS.toMillis(CLEANUP_INTERVAL)) {
+        return last;
+      }
+      due[0] = true;
+      return now;
+    });
+    if (!due[0]) {
+      return;
+    }
+    String table = table(tenantId);
+    PostgresClient.getInstance(vertx, tenantId)
+      .execute("DELETE FROM " + table + " WHERE id IN (SELECT id FROM " + table
+          + " WHERE expires < now() LIMIT " + CLEANUP_BATCH + ")")
+      .onSuccess(rows -> log.debug("Deleted {} expired SAML message ids of tenant {}", rows.rowCount(), tenantId))
+      .onFailure(e -> log.warn("Cannot delete expired SAML message ids of tenant {}: {}",
+          tenantId, e.getMessage()));
+  }
+
+  private static String table(String tenantId) {
+    return PostgresClient.convertToPsqlStandard(tenantId) + "." + TABLE;
+  }
+
+  private static XMLInputFactory xmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+
+  /**
+   * Forget the ids seen by this instance, the database is not affected.
+   */
+  public void invalidateAll() {
+    nearCache.clear();
+  }
+}
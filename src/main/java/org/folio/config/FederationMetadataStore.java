@@ -0,0 +1,347 @@
+package org.folio.config;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.config.model.IdpMetadata;
+
+/**
+ * Shared store of federation metadata aggregates (an EntitiesDescriptor with many EntityDescriptors).
+ *
+ * <p>An aggregate is parsed once per source URL and content hash with StAX, not into a DOM.
+ * The index holds each EntityDescriptor as a standalone serialized document, so the client
+ * of a tenant only parses the single entity it uses instead of the whole aggregate.
+ * Only the index of the most recent content of a source URL is kept, and only while a client
+ * uses it: each client built from a selected entity holds a reference from {@link #acquire(String)}
+ * to {@link #release(String)}; the index is dropped with the last reference. An index without
+ * reference is dropped when a selection from it fails or no client is built from it, see
+ * {@link #dropUnreferenced(String)}.
+ */
+public class FederationMetadataStore {
+
+  public static final String METADATA_NS = "urn:oasis:names:tc:SAML:2.0:metadata";
+
+  private static final Logger log = LogManager.getLogger(FederationMetadataStore.class);
+  private static final FederationMetadataStore instance = new FederationMetadataStore();
+  private static final XMLInputFactory XML_INPUT_FACTORY = xmlInputFactory();
+  private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+  private final ConcurrentMap<String, IndexEntry> indexes = new ConcurrentHashMap<>(); // key: source URL
+
+  public static class FederationMetadataException extends RuntimeException {
+    private static final long serialVersionUID = 7340537453740028329L;
+
+    public FederationMetadataException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * EntityDescriptors of an aggregate by entityID, each serialized as a standalone document.
+   */
+  static class Index {
+    private final Map<String, byte[]> entities;
+    private final List<String> idpEntityIds;
+
+    Index(Map<String, byte[]> entities, List<String> idpEntityIds) {
+      this.entities = entities;
+      this.idpEntityIds = idpEntityIds;
+    }
+
+    Map<String, byte[]> getEntities() {
+      return entities;
+    }
+
+    /**
+     * @return entityIDs of the EntityDescriptors with an IDPSSODescriptor in document order
+     */
+    List<String> getIdpEntityIds() {
+      return idpEntityIds;
+    }
+  }
+
+  private static class IndexEntry {
+    private final String hash;
+    private final Future<Index> index;
+    /** guarded by the map's lock of the URL */
+    private int references;
+
+    IndexEntry(String hash, Future<Index> index) {
+      this.hash = hash;
+      this.index = index;
+    }
+  }
+
+  private FederationMetadataStore() {
+  }
+
+  public static FederationMetadataStore getInstance() {
+    return instance;
+  }
+
+  /**
+   * Select the EntityDescriptor of an IdP from the metadata.
+   *
+   * @param url source URL of the metadata
+   * @param idpMetadata the fetched metadata; returned as is if it is not an aggregate
+   * @param entityId entityID of the IdP; null selects the only EntityDescriptor with an IDPSSODescriptor
+   * @return metadata containing only the selected EntityDescriptor, failed with
+   *     {@link FederationMetadataException} if there is no such entity or if entityId is null and
+   *     the aggregate has more than one IdP; a failure drops the index unless a client holds it
+   */
+  public Future<IdpMetadata> select(Vertx vertx, String url, IdpMetadata idpMetadata, String entityId) {
+    if (!idpMetadata.isAggregate()) {
+      return Future.succeededFuture(idpMetadata);
+    }
+    return index(vertx, url, idpMetadata)
+      .map(index -> {
+        String id = entityId == null ? onlyIdp(url, index) : entityId;
+        byte[] entity = index.getEntities().get(id);
+        if (entity == null) {
+          throw new FederationMetadataException("No EntityDescriptor " + id + " in IdP metadata " + url);
+        }
+        return idpMetadata.withEntity(url, entity);
+      })
+      .onFailure(e -> dropUnreferenced(url));
+  }
+
+  private static String onlyIdp(String url, Index index) {
+    List<String> idps = index.getIdpEntityIds();
+    if (idps.isEmpty()) {
+      throw new FederationMetadataException("No EntityDescriptor with IDPSSODescriptor in IdP metadata " + url);
+    }
+    if (idps.size() > 1) {
+      throw new FederationMetadataException("IdP metadata " + url + " contains " + idps.size()
+          + " IdPs, configure the entityID of the IdP to use, for example " + idps.get(0));
+    }
+    return idps.get(0);
+  }
+
+  /**
+   * Keep the index of the URL while the caller uses an entity selected from it.
+   *
+   * @return false if there is no index of the URL
+   */
+  public boolean acquire(String url) {
+    boolean[] acquired = new boolean[1];
+    indexes.computeIfPresent(url, (key, entry) -> {
+      entry.references++;
+      acquired[0] = true;
+      return entry;
+    });
+    return acquired[0];
+  }
+
+  /**
+   * Release a reference of {@link #acquire(String)}, drop the index with the last one.
+   */
+  public void release(String url) {
+    indexes.computeIfPresent(url, (key, entry) -> {
+      if (--entry.references > 0) {
+        return entry;
+      }
+      log.debug("Dropping index of {}", url);
+      return null;
+    });
+  }
+
+  /**
+   * Drop the index of the URL if no client holds a reference, for example after the client
+   * could not be built from the selected entity.
+   */
+  public void dropUnreferenced(String url) {
+    indexes.computeIfPresent(url, (key, entry) -> {
+      if (entry.references > 0) {
+        return entry;
+      }
+      log.debug("Dropping unreferenced index of {}", url);
+      return null;
+    });
+  }
+
+  /**
+   * @return number of indexed URLs
+   */
+  int size() {
+    return indexes.size();
+  }
+
+  /**
+   * Index of the aggregate, parsed on a worker thread unless it is already indexed.
+   */
+  Future<Index> index(Vertx vertx, String url, IdpMetadata idpMetadata) {
+    return indexes.compute(url, (key, existing) -> {
+      if (existing != null && existing.hash.equals(idpMetadata.getHash()) && !existing.index.failed()) {
+        return existing;
+      }
+      // clients of the previous content keep their selected entities, the old index is not needed
+      byte[] aggregate = idpMetadata.getBytes();
+      Future<Index> index = vertx.executeBlocking(() -> {
+        long start = System.nanoTime();
+        Index parsed = parse(aggregate);
+        log.info("Indexed {} EntityDescriptors of {} in {} ms", parsed.getEntities().size(), url,
+            (System.nanoTime() - start) / 1000000);
+        return parsed;
+      }, false);
+      IndexEntry entry = new IndexEntry(idpMetadata.getHash(), index);
+      if (existing != null) {
+        entry.references = existing.references;
+      }
+      return entry;
+    }).index;
+  }
+
+  /**
+   * Drop all indexes.
+   */
+  public void clear() {
+    indexes.clear();
+  }
+
+  /**
+   * Streaming parse of the aggregate. Namespace declarations of the enclosing EntitiesDescriptor
+   * elements are copied into each EntityDescriptor so that it is a standalone document; this
+   * includes prefixes that are only used in attribute values like xsi:type.
+   */
+  static Index parse(byte[] aggregate) throws XMLStreamException {
+    Map<String, byte[]> entities = new HashMap<>();
+    List<String> idpEntityIds = new ArrayList<>();
+    Deque<Map<String, String>> ancestorNamespaces = new ArrayDeque<>();
+    XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(aggregate));
+    try {
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.END_ELEMENT) {
+          ancestorNamespaces.pop();
+        } else if (event == XMLStreamConstants.START_ELEMENT) {
+          if ("EntityDescriptor".equals(reader.getLocalName()) && METADATA_NS.equals(reader.getNamespaceURI())) {
+            String entityId = reader.getAttributeValue(null, "entityID");
+            boolean[] idp = new boolean[1];
+            byte[] entity = copyElement(reader, ancestorNamespaces, idp);
+            if (entityId != null && entities.putIfAbsent(entityId, entity) == null && idp[0]) {
+              idpEntityIds.add(entityId);
+            }
+          } else {
+            ancestorNamespaces.push(namespaces(reader));
+          }
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return new Index(Map.copyOf(entities), List.copyOf(idpEntityIds));
+  }
+
+  private static Map<String, String> namespaces(XMLStreamReader reader) {
+    Map<String, String> namespaces = new LinkedHashMap<>();
+    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+      namespaces.put(prefix(reader.getNamespacePrefix(i)), reader.getNamespaceURI(i));
+    }
+    return namespaces;
+  }
+
+  /**
+   * Serialize the element the reader is positioned at, leave the reader at its end element.
+   *
+   * @param idp set to true if the element has an IDPSSODescriptor child
+   */
+  private static byte[] copyElement(XMLStreamReader reader, Deque<Map<String, String>> ancestorNamespaces,
+      boolean[] idp) throws XMLStreamException {
+
+    // in-scope declarations of the ancestors, inner declarations override outer ones
+    Map<String, String> inScope = new LinkedHashMap<>();
+    ancestorNamespaces.descendingIterator().forEachRemaining(inScope::putAll);
+    inScope.putAll(namespaces(reader));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+    writer.writeStartDocument("UTF-8", "1.0");
+    int depth = 0;
+    while (true) {
+      switch (reader.getEventType()) {
+        case XMLStreamConstants.START_ELEMENT:
+          if (depth == 1 && "IDPSSODescriptor".equals(reader.getLocalName())
+              && METADATA_NS.equals(reader.getNamespaceURI())) {
+            idp[0] = true;
+          }
+          writer.writeStartElement(prefix(reader.getPrefix()), reader.getLocalName(), nullToEmpty(reader.getNamespaceURI()));
+          writeNamespaces(writer, depth == 0 ? inScope : namespaces(reader));
+          for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attributeNamespace = reader.getAttributeNamespace(i);
+            if (attributeNamespace == null || attributeNamespace.isEmpty()) {
+              writer.writeAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            } else {
+              writer.writeAttribute(prefix(reader.getAttributePrefix(i)), attributeNamespace,
+                  reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+          }
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          writer.writeEndElement();
+          depth--;
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+          break;
+        default:
+          // comments and processing instructions are dropped
+          break;
+      }
+      if (depth == 0) {
+        break;
+      }
+      reader.next();
+    }
+    writer.writeEndDocument();
+    writer.close();
+    return out.toByteArray();
+  }
+
+  private static void writeNamespaces(XMLStreamWriter writer, Map<String, String> namespaces)
+      throws XMLStreamException {
+    for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+      if (namespace.getKey().isEmpty()) {
+        writer.writeDefaultNamespace(namespace.getValue());
+      } else {
+        writer.writeNamespace(namespace.getKey(), namespace.getValue());
+      }
+    }
+  }
+
+  private static String prefix(String prefix) {
+    return prefix == null ? "" : prefix;
+  }
+
+  private static String nullToEmpty(String s) {
+    return s == null ? "" : s;
+  }
+
+  private static XMLInputFactory xmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    return factory;
+  }
+}
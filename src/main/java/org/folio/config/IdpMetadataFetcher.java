@@ -0,0 +1,77 @@
+package org.folio.config;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.ext.web.client.HttpRequest;
+import io.vertx.ext.web.client.HttpResponse;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.config.model.IdpMetadata;
+import org.folio.util.WebClientFactory;
+
+/**
+ * Fetch IdP metadata using the non-blocking {@link io.vertx.ext.web.client.WebClient}.
+ */
+public class IdpMetadataFetcher {
+
+  private static final Logger log = LogManager.getLogger(IdpMetadataFetcher.class);
+
+  public static class IdpMetadataFetchException extends RuntimeException {
+    private static final long serialVersionUID = 7340537453740028328L;
+
+    public IdpMetadataFetchException(String message) {
+      super(message);
+    }
+  }
+
+  private IdpMetadataFetcher() {
+  }
+
+  /**
+   * Conditional GET of the IdP metadata from idpUrl using the ETag and Last-Modified validators
+   * of the previous response.
+   *
+   * @param previous the previously fetched metadata, null for an unconditional GET
+   * <p>The new metadata is built on a worker thread.
+   *
+   * @return previous if the IdP responds 304 Not Modified, otherwise the new metadata,
+   *     or a failed future if the status code is not 200 or the body is empty
+   */
+  public static Future<IdpMetadata> fetch(Vertx vertx, String idpUrl, IdpMetadata previous) {
+    HttpRequest<Buffer> request = WebClientFactory.getWebClient(vertx)
+      .getAbs(idpUrl)
+      .timeout(WebClientFactory.DEFAULT_TIMEOUT);
+    if (previous != null && previous.getEtag() != null) {
+      request.putHeader(HttpHeaders.IF_NONE_MATCH.toString(), previous.getEtag());
+    }
+    if (previous != null && previous.getLastModified() != null) {
+      request.putHeader(HttpHeaders.IF_MODIFIED_SINCE.toString(), previous.getLastModified());
+    }
+    return request.send()
+      .compose(response -> {
+        if (previous != null && response.statusCode() == 304) {
+          return Future.succeededFuture(previous);
+        }
+        Buffer body = body(idpUrl, response);
+        String etag = response.getHeader(HttpHeaders.ETAG.toString());
+        String lastModified = response.getHeader(HttpHeaders.LAST_MODIFIED.toString());
+        // copying and hashing a federation aggregate of many MB takes too long for the event loop
+        return vertx.executeBlocking(() -> new IdpMetadata(body, etag, lastModified), false);
+      })
+      .onFailure(e -> log.warn("Fetching IdP metadata from {} failed: {}", idpUrl, e.getMessage()));
+  }
+
+  private static Buffer body(String idpUrl, HttpResponse<Buffer> response) {
+    if (response.statusCode() != 200) {
+      throw new IdpMetadataFetchException("Fetching IdP metadata from " + idpUrl
+          + " returned HTTP status " + response.statusCode());
+    }
+    Buffer body = response.body();
+    if (body == null || body.length() == 0) {
+      throw new IdpMetadataFetchException("Fetching IdP metadata from " + idpUrl + " returned an empty body");
+    }
+    return body;
+  }
+}
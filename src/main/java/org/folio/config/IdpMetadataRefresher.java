@@ -0,0 +1,136 @@
+package org.folio.config;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import java.time.Duration;
+import java.time.Instant;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.config.model.IdpMetadata;
+import org.folio.config.model.SamlClientComposite;
+
+/**
+ * Refresh the IdP metadata of a loaded client in the background.
+ *
+ * <p>A Vert.x timer per tenant re-fetches the idpUrl with a conditional GET, see
+ * {@link IdpMetadataFetcher#fetch(io.vertx.core.Vertx, String, IdpMetadata)}. Only if the content
+ * has changed a new client is initialized and replaces the old one in {@link SamlConfigHolder}.
+ * The timer stops when the client has been removed or replaced by a reload.
+ */
+public class IdpMetadataRefresher {
+
+  /** in seconds, 3600 seconds are 1 hour */
+  static final long DEFAULT_REFRESH_INTERVAL = 3600;
+  /** in seconds, lower bound for the validUntil and cacheDuration of the metadata */
+  static final long MIN_REFRESH_INTERVAL = 60;
+
+  private static final Logger log = LogManager.getLogger(IdpMetadataRefresher.class);
+  private static long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+
+  private IdpMetadataRefresher() {
+  }
+
+  /**
+   * @param seconds refresh interval, 0 disables the refresh, null for the default
+   */
+  public static void setRefreshInterval(String seconds) {
+    try {
+      refreshInterval = seconds == null
+          ? DEFAULT_REFRESH_INTERVAL
+          : Long.parseLong(seconds);
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable "
+          + "IDP_METADATA_REFRESH_INTERVAL: \"" + seconds + "\"");
+    }
+  }
+
+  /**
+   * Schedule the refresh of a newly loaded client. Nothing is scheduled if the refresh is
+   * disabled or the configuration contains the IdP metadata instead of fetching it.
+   */
+  public static void start(Context vertxContext, String tenantId, SamlClientComposite clientComposite) {
+    IdpMetadata idpMetadata = clientComposite.getIdpMetadata();
+    if (refreshInterval <= 0 || tenantId == null || idpMetadata == null
+        || clientComposite.getConfiguration().getIdpMetadata() != null
+        || StringUtils.isBlank(clientComposite.getConfiguration().getKeystore())) {
+      return;
+    }
+    schedule(vertxContext, tenantId, clientComposite, idpMetadata);
+  }
+
+  private static void schedule(Context vertxContext, String tenantId, SamlClientComposite clientComposite,
+    IdpMetadata idpMetadata) {
+
+    long delay = delayMillis(idpMetadata, Instant.now());
+    vertxContext.runOnContext(run -> vertxContext.owner().setTimer(delay, timerId -> {
+      if (!isCurrent(tenantId, clientComposite)) {
+        log.debug("IdP metadata refresh of tenant {} stopped", tenantId);
+        return;
+      }
+      refresh(vertxContext, tenantId, clientComposite, idpMetadata)
+        .onComplete(refreshed -> {
+          if (isCurrent(tenantId, clientComposite)) {
+            schedule(vertxContext, tenantId, clientComposite,
+                refreshed.succeeded() ? refreshed.result() : idpMetadata);
+          }
+        });
+    }));
+  }
+
+  /**
+   * Fetch the metadata; if it has changed initialize a new client and let it replace clientComposite.
+   *
+   * @param idpMetadata the most recently fetched metadata of clientComposite
+   * @return the fetched metadata
+   */
+  static Future<IdpMetadata> refresh(Context vertxContext, String tenantId, SamlClientComposite clientComposite,
+    IdpMetadata idpMetadata) {
+
+    Vertx vertx = vertxContext.owner();
+    String idpUrl = clientComposite.getConfiguration().getIdpUrl();
+    String idpEntityId = clientComposite.getConfiguration().getIdpEntityId();
+    return IdpMetadataFetcher.fetch(vertx, idpUrl, idpMetadata)
+      .compose(fetched -> FederationMetadataStore.getInstance().select(vertx, idpUrl, fetched, idpEntityId))
+      .compose(fetched -> {
+        if (fetched.getHash().equals(idpMetadata.getHash())) {
+          log.debug("IdP metadata of tenant {} unchanged", tenantId);
+          // re-indexed if the index has been dropped meanwhile, no client takes it
+          SamlClientLoader.dropUnreferencedIndex(fetched);
+          return Future.succeededFuture(fetched);
+        }
+        var samlConfiguration = clientComposite.getConfiguration();
+        return SamlClientLoader.createClient(vertxContext, tenantId, samlConfiguration, fetched)
+          .map(refreshed -> {
+            if (SamlConfigHolder.getInstance().replaceClient(tenantId, clientComposite, refreshed)) {
+              log.info("IdP metadata of tenant {} changed, client replaced", tenantId);
+              start(vertxContext, tenantId, refreshed);
+            } else {
+              refreshed.release();
+            }
+            return fetched;
+          });
+      })
+      .onFailure(e -> log.warn("IdP metadata refresh of tenant {} failed: {}", tenantId, e.getMessage()));
+  }
+
+  /**
+   * The refresh interval, shortened to the cacheDuration and to the validUntil of the metadata,
+   * but not below {@link #MIN_REFRESH_INTERVAL}.
+   */
+  static long delayMillis(IdpMetadata idpMetadata, Instant now) {
+    long delay = refreshInterval * 1000;
+    if (idpMetadata.getCacheDuration() != null) {
+      delay = Math.min(delay, idpMetadata.getCacheDuration().toMillis());
+    }
+    if (idpMetadata.getValidUntil() != null) {
+      delay = Math.min(delay, Duration.between(now, idpMetadata.getValidUntil()).toMillis());
+    }
+    return Math.max(delay, Math.min(refreshInterval, MIN_REFRESH_INTERVAL) * 1000);
+  }
+
+  private static boolean isCurrent(String tenantId, SamlClientComposite clientComposite) {
+    return SamlConfigHolder.getInstance().findClient(tenantId) == clientComposite;
+  }
+}
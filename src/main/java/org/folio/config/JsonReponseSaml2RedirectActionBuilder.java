@@ -1,9 +1,11 @@
 package org.folio.config;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Optional;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.config.model.SamlClientComposite;
 import org.folio.rest.jaxrs.model.SamlLogin;
 import org.opensaml.core.xml.util.XMLObjectSupport;
 import org.opensaml.saml.common.xml.SAMLConstants;
@@ -11,7 +13,6 @@ import org.opensaml.saml.saml2.core.AuthnRequest;
 import org.pac4j.core.context.WebContext;
 import org.pac4j.core.context.session.SessionStore;
 import org.pac4j.core.exception.http.RedirectionAction;
-import org.pac4j.core.exception.http.OkAction;
 import org.pac4j.core.exception.http.StatusAction;
 import org.pac4j.core.redirect.RedirectionActionBuilder;
 import org.pac4j.core.util.CommonHelper;
@@ -19,13 +20,13 @@ import org.pac4j.saml.client.SAML2Client;
 import org.pac4j.saml.context.SAML2MessageContext;
 import org.pac4j.saml.sso.impl.SAML2AuthnRequestBuilder;
 import org.pac4j.saml.transport.Pac4jSAMLResponse;
-import io.vertx.core.json.Json;
+import org.pac4j.saml.util.SAML2Utils;
 import net.shibboleth.utilities.java.support.codec.Base64Support;
 import net.shibboleth.utilities.java.support.xml.SerializeSupport;
 
 /**
- * Builds a {@link RedirectionAction} that contains a JSON-serialized {@link SamlLogin} object instead of
- * HTML content. Always contains content (in redirect binding case too).
+ * Builds a {@link RedirectionAction} that contains a {@link SamlLogin} object instead of
+ * HTML content, see {@link SamlLoginAction}. Always contains content (in redirect binding case too).
  *
  * @author rsass
  */
@@ -43,6 +44,12 @@ public class JsonReponseSaml2RedirectActionBuilder implements RedirectionActionB
   @Override
   public Optional<RedirectionAction> getRedirectionAction(WebContext webContext, SessionStore sessionStore) {
     try {
+      SamlClientComposite composite = templateHolder();
+      AuthnRequestTemplate template = composite == null ? null : composite.getAuthnRequestTemplate();
+      if (template != null && template.matches(client)) {
+        return Optional.of(new SamlLoginAction(templateLogin(template, webContext, sessionStore)));
+      }
+
       final SAML2AuthnRequestBuilder  saml2ObjectBuilder = new SAML2AuthnRequestBuilder();
       final SAML2MessageContext context = this.client.getContextProvider().buildContext(client, webContext, sessionStore);
       final String relayState = this.client.getStateGenerator().generateValue(webContext, sessionStore);
@@ -65,17 +72,45 @@ public class JsonReponseSaml2RedirectActionBuilder implements RedirectionActionB
         samlLogin.setLocation(destination);
         samlLogin.setSamlRequest(b64authnRequest);
         samlLogin.setRelayState(relayState);
+        if (composite != null) {
+          // null if the request cannot be templated
+          composite.setAuthnRequestTemplate(AuthnRequestTemplate.of(client, authnRequest, authnResuestAsString));
+        }
       } else {
         String redirectUrl = adapter.getRedirectUrl();
         samlLogin.setBindingMethod(SamlLogin.BindingMethod.GET);
         samlLogin.setLocation(redirectUrl);
       }
 
-      return Optional.of(new OkAction(Json.encode(samlLogin)));
+      return Optional.of(new SamlLoginAction(samlLogin));
     } catch (Exception e) {
       log.error("Exception processing SAML login request: {}", e.getMessage(), e);
       throw new StatusAction(500);
     }
   }
 
+  /**
+   * @return the composite of the client if AuthnRequest templates are enabled and it is
+   *         the current client of the tenant, otherwise null
+   */
+  private SamlClientComposite templateHolder() {
+    if (!AuthnRequestTemplate.isEnabled()) {
+      return null;
+    }
+    SamlClientComposite composite = SamlConfigHolder.getInstance().findClient(client.getName());
+    return composite != null && composite.getClient() == client ? composite : null;
+  }
+
+  private SamlLogin templateLogin(AuthnRequestTemplate template, WebContext webContext,
+    SessionStore sessionStore) {
+
+    final String relayState = this.client.getStateGenerator().generateValue(webContext, sessionStore);
+    String authnRequest = template.render(SAML2Utils.generateID(), Instant.now());
+    return new SamlLogin()
+      .withBindingMethod(SamlLogin.BindingMethod.POST)
+      .withLocation(template.getDestination())
+      .withSamlRequest(Base64Support.encode(authnRequest.getBytes(StandardCharsets.UTF_8), Base64Support.UNCHUNKED))
+      .withRelayState(relayState);
+  }
+
 }
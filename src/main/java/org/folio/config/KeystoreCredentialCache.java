@@ -0,0 +1,176 @@
+package org.folio.config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.opensaml.security.credential.Credential;
+import org.opensaml.security.credential.CredentialResolver;
+import org.opensaml.security.credential.impl.StaticCredentialResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoCredentialResolver;
+import org.opensaml.xmlsec.keyinfo.KeyInfoGenerator;
+import org.opensaml.xmlsec.signature.KeyInfo;
+import org.pac4j.saml.config.SAML2Configuration;
+import org.pac4j.saml.crypto.CredentialProvider;
+import org.pac4j.saml.crypto.KeyStoreCredentialProvider;
+
+/**
+ * LRU cache of decoded keystores and their credentials.
+ *
+ * <p>Key is the SHA-256 of the Base64 encoded keystore, the keystore password and the private key
+ * password. Unlike {@link SharedContent} an entry outlives the clients using it, so a client rebuilt
+ * after an eviction neither Base64-decodes the keystore nor loads it and derives the key from the
+ * passwords again. The private key is resolved once per entry, not on each signing.
+ */
+public class KeystoreCredentialCache {
+
+  public static final int DEFAULT_SIZE = 100;
+
+  private static final KeystoreCredentialCache instance = new KeystoreCredentialCache(DEFAULT_SIZE);
+
+  private final Map<String, Entry> entries;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Decoded keystore and, after the first client initialization, its credentials.
+   */
+  public static class Entry {
+    private final byte[] keystore;
+    private CredentialProvider credentialProvider;
+
+    Entry(byte[] keystore) {
+      this.keystore = keystore;
+    }
+
+    /**
+     * @return the decoded keystore, must not be modified
+     */
+    public byte[] getKeystore() {
+      return keystore;
+    }
+
+    /**
+     * The credentials of the keystore, loaded from configuration on first call.
+     * Blocking on first call, run it on a worker thread.
+     */
+    public synchronized CredentialProvider getCredentialProvider(SAML2Configuration configuration) {
+      if (credentialProvider == null) {
+        credentialProvider = new ResolvedCredentialProvider(new KeyStoreCredentialProvider(configuration));
+      }
+      return credentialProvider;
+    }
+
+    synchronized boolean isResolved() {
+      return credentialProvider != null;
+    }
+  }
+
+  /**
+   * {@link CredentialProvider} that resolves the private key credential of the keystore only once.
+   */
+  static class ResolvedCredentialProvider implements CredentialProvider {
+    private final CredentialProvider delegate;
+    private final Credential credential;
+    private final CredentialResolver credentialResolver;
+
+    ResolvedCredentialProvider(CredentialProvider delegate) {
+      this.delegate = delegate;
+      this.credential = delegate.getCredential();
+      this.credentialResolver = new StaticCredentialResolver(credential);
+    }
+
+    @Override
+    public KeyInfo getKeyInfo() {
+      return delegate.getKeyInfo();
+    }
+
+    @Override
+    public CredentialResolver getCredentialResolver() {
+      return credentialResolver;
+    }
+
+    @Override
+    public KeyInfoCredentialResolver getKeyInfoCredentialResolver() {
+      return delegate.getKeyInfoCredentialResolver();
+    }
+
+    @Override
+    public KeyInfoGenerator getKeyInfoGenerator() {
+      return delegate.getKeyInfoGenerator();
+    }
+
+    @Override
+    public Credential getCredential() {
+      return credential;
+    }
+  }
+
+  KeystoreCredentialCache(int size) {
+    entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > size;
+      }
+    };
+  }
+
+  public static KeystoreCredentialCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Return the entry of the keystore, decode the keystore if there is none.
+   *
+   * @param keystore Base64 encoded keystore
+   */
+  public Entry get(String keystore, String keystorePassword, String privateKeyPassword) {
+    String key = key(keystore, keystorePassword, privateKeyPassword);
+    synchronized (entries) {
+      Entry entry = entries.get(key);
+      if (entry != null) {
+        hits.increment();
+        return entry;
+      }
+    }
+    misses.increment();
+    Entry entry = new Entry(Base64.getDecoder().decode(keystore));
+    synchronized (entries) {
+      // keep the entry of a concurrent decode, its credentials may already be resolved
+      return entries.computeIfAbsent(key, k -> entry);
+    }
+  }
+
+  static String key(String keystore, String keystorePassword, String privateKeyPassword) {
+    // NUL cannot occur in Base64; the passwords are hashed with the keystore and are not kept
+    String content = keystore + '\0' + keystorePassword + '\0' + privateKeyPassword;
+    return SharedContent.sha256(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public void invalidateAll() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * @return number of lookups that found a decoded keystore
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return number of lookups that decoded the keystore
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+}
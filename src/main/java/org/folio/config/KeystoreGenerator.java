@@ -0,0 +1,179 @@
+package org.folio.config;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Generates the keystore of a configuration without keystore in memory.
+ *
+ * <p>The keystore has a single RSA key with a self-signed certificate, like the keystore pac4j
+ * generates, but is neither written to nor read from the file system. The RSA key generation takes
+ * up to seconds; a small pool of key pairs is generated in the background so that first-time setup
+ * of a tenant only signs a certificate.
+ */
+public class KeystoreGenerator {
+
+  public static final int DEFAULT_POOL_SIZE = 2;
+  static final int KEY_SIZE = 2048;
+  static final String ALIAS = "mod-login-saml";
+  static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+  static final Duration VALIDITY = Duration.ofDays(20 * 365L);
+
+  private static final Logger log = LogManager.getLogger(KeystoreGenerator.class);
+  private static final SecureRandom random = new SecureRandom();
+  private static final KeystoreGenerator instance = new KeystoreGenerator(KeystoreGenerator::generateKeyPair);
+
+  private final Supplier<KeyPair> keyPairSupplier;
+  private final Queue<KeyPair> pool = new ConcurrentLinkedQueue<>();
+  /** key pairs being generated for the pool */
+  private final AtomicInteger pending = new AtomicInteger();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private volatile int poolSize = DEFAULT_POOL_SIZE;
+
+  public static class KeystoreGenerationException extends RuntimeException {
+    private static final long serialVersionUID = 7340537453740028332L;
+
+    public KeystoreGenerationException(Throwable cause) {
+      super(cause.getMessage(), cause);
+    }
+  }
+
+  KeystoreGenerator(Supplier<KeyPair> keyPairSupplier) {
+    this.keyPairSupplier = keyPairSupplier;
+  }
+
+  public static KeystoreGenerator getInstance() {
+    return instance;
+  }
+
+  /**
+   * @param size value of the KEYPAIR_POOL_SIZE environment variable: number of pre-generated key pairs,
+   *             0 disables the pool, null for the default
+   */
+  public void setPoolSize(String size) {
+    try {
+      int value = size == null ? DEFAULT_POOL_SIZE : Integer.parseInt(size);
+      if (value < 0) {
+        throw new NumberFormatException();
+      }
+      poolSize = value;
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable "
+          + "KEYPAIR_POOL_SIZE: \"" + size + "\"");
+    }
+  }
+
+  /**
+   * Generate key pairs on worker threads until the pool is full.
+   */
+  public void fill(Vertx vertx) {
+    while (true) {
+      int inFlight = pending.get();
+      if (pool.size() + inFlight >= poolSize) {
+        return;
+      }
+      if (pending.compareAndSet(inFlight, inFlight + 1)) {
+        vertx.executeBlocking(keyPairSupplier::get, false)
+          .onSuccess(pool::add)
+          .onFailure(e -> log.warn("Cannot generate key pair: {}", e.getMessage(), e))
+          .onComplete(x -> pending.decrementAndGet());
+      }
+    }
+  }
+
+  /**
+   * Create a keystore with a pooled key pair, or with a new one if the pool is empty,
+   * and refill the pool.
+   *
+   * @return the keystore in the format of {@link KeyStore#getDefaultType()}
+   */
+  public Future<byte[]> generate(Vertx vertx, String keystorePassword, String privateKeyPassword) {
+    KeyPair pooled = pool.poll();
+    if (pooled == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return vertx.executeBlocking(() -> {
+      KeyPair keyPair = pooled == null ? keyPairSupplier.get() : pooled;
+      return keystore(keyPair, keystorePassword, privateKeyPassword);
+    }, false)
+      .onComplete(x -> fill(vertx));
+  }
+
+  static KeyPair generateKeyPair() {
+    try {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+      generator.initialize(KEY_SIZE, random);
+      return generator.generateKeyPair();
+    } catch (GeneralSecurityException e) {
+      throw new KeystoreGenerationException(e);
+    }
+  }
+
+  static byte[] keystore(KeyPair keyPair, String keystorePassword, String privateKeyPassword) {
+    try {
+      X500Name name = new X500Name("CN=" + ALIAS);
+      Instant now = Instant.now();
+      var certificateBuilder = new JcaX509v3CertificateBuilder(name, new BigInteger(64, random),
+          Date.from(now.minus(Duration.ofDays(1))), Date.from(now.plus(VALIDITY)), name, keyPair.getPublic());
+      var signer = new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).build(keyPair.getPrivate());
+      X509Certificate certificate = new JcaX509CertificateConverter()
+          .getCertificate(certificateBuilder.build(signer));
+
+      KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+      keyStore.load(null, null);
+      keyStore.setKeyEntry(ALIAS, keyPair.getPrivate(), privateKeyPassword.toCharArray(),
+          new Certificate[] { certificate });
+      var out = new ByteArrayOutputStream();
+      keyStore.store(out, keystorePassword.toCharArray());
+      return out.toByteArray();
+    } catch (GeneralSecurityException | OperatorCreationException | IOException e) {
+      throw new KeystoreGenerationException(e);
+    }
+  }
+
+  public int size() {
+    return pool.size();
+  }
+
+  /**
+   * @return number of keystores generated with a pooled key pair
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return number of keystores that had to wait for the generation of a key pair
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+}
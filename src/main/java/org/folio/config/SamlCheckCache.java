@@ -0,0 +1,107 @@
+package org.folio.config;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-tenant cache of negative /saml/check results.
+ *
+ * <p>A positive result needs no cache: it is the loaded client in {@link SamlConfigHolder}. A tenant
+ * without a working configuration has no client, so without this cache each check of the login page
+ * would read the configuration and try to build a client. Negative results expire after the TTL and
+ * are dropped when the configuration of the tenant is stored.
+ */
+public class SamlCheckCache {
+
+  /** in seconds */
+  public static final long DEFAULT_NEGATIVE_TTL = 60;
+
+  private static final SamlCheckCache instance = new SamlCheckCache(System::nanoTime);
+
+  private final ConcurrentMap<String, Long> inactiveUntil = new ConcurrentHashMap<>(); // key: tenantId
+  private final LongSupplier nanoClock;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private volatile long negativeTtlNanos = TimeUnit.SECONDS.toNanos(DEFAULT_NEGATIVE_TTL);
+
+  SamlCheckCache(LongSupplier nanoClock) {
+    this.nanoClock = nanoClock;
+  }
+
+  public static SamlCheckCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * @param seconds value of the SAML_CHECK_NEGATIVE_TTL environment variable: number of seconds a failed
+   *                check is cached, 0 disables the cache, null for the default
+   */
+  public void setNegativeTtl(String seconds) {
+    try {
+      long value = seconds == null ? DEFAULT_NEGATIVE_TTL : Long.parseLong(seconds);
+      if (value < 0) {
+        throw new NumberFormatException();
+      }
+      negativeTtlNanos = TimeUnit.SECONDS.toNanos(value);
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable "
+          + "SAML_CHECK_NEGATIVE_TTL: \"" + seconds + "\"");
+    }
+  }
+
+  /**
+   * @return true if a failed check of the tenant is cached and has not expired
+   */
+  public boolean isInactive(String tenantId) {
+    if (tenantId == null) {
+      return false;
+    }
+    Long until = inactiveUntil.get(tenantId);
+    if (until != null && nanoClock.getAsLong() - until < 0) {
+      hits.increment();
+      return true;
+    }
+    misses.increment();
+    return false;
+  }
+
+  /**
+   * Store the result of a check that had to load the client.
+   */
+  public void put(String tenantId, boolean active) {
+    if (tenantId == null) {
+      return;
+    }
+    if (active || negativeTtlNanos == 0) {
+      inactiveUntil.remove(tenantId);
+    } else {
+      inactiveUntil.put(tenantId, nanoClock.getAsLong() + negativeTtlNanos);
+    }
+  }
+
+  /**
+   * Drop the cached result of the tenant, for example after its configuration has changed.
+   */
+  public void invalidate(String tenantId) {
+    if (tenantId != null) {
+      inactiveUntil.remove(tenantId);
+    }
+  }
+
+  /**
+   * @return number of checks answered by a cached negative result
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return number of checks of tenants without client and without cached negative result
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+}
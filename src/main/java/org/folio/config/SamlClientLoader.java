@@ -1,7 +1,6 @@
 package org.folio.config;
 
 import java.net.MalformedURLException;
-import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
@@ -11,17 +10,23 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.config.model.FolioSaml2Client;
+import org.folio.config.model.IdpMetadata;
 import org.folio.config.model.SAML2ClientMock;
 import org.folio.config.model.SamlClientComposite;
 import org.folio.config.model.SamlConfiguration;
 import org.folio.dao.ConfigurationsDao;
 import org.folio.dao.impl.ConfigurationsDaoImpl;
+import org.folio.metrics.SamlMetrics;
+import org.folio.metrics.SamlMetrics.Phase;
 import org.folio.util.OkapiHelper;
 import org.folio.util.model.OkapiHeaders;
 import org.opensaml.saml.common.xml.SAMLConstants;
 import org.pac4j.core.util.CommonHelper;
 import org.pac4j.saml.client.SAML2Client;
 import org.pac4j.saml.config.SAML2Configuration;
+import org.pac4j.saml.metadata.SAML2IdentityProviderMetadataResolver;
+import org.pac4j.saml.metadata.SAML2MetadataResolver;
 import org.pac4j.saml.state.SAML2StateGenerator;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.UrlResource;
@@ -45,9 +50,43 @@ public class SamlClientLoader {
   /** in seconds, 28800 seconds are 8 hours */
   static final long DEFAULT_MAXIMUM_AUTHENTICATION_LIFETIME = 28800;
 
+  /** IdP metadata and its parsed resolver by hash and content hash */
+  static final SharedContent<SharedIdpMetadata> SHARED_IDP_METADATA = new SharedContent<>();
+
   private static final Logger log = LogManager.getLogger(SamlClientLoader.class);
   private static long maximumAuthenticationLifetime = DEFAULT_MAXIMUM_AUTHENTICATION_LIFETIME;
 
+  /**
+   * IdP metadata together with its parsed metadata resolver. Parsing the metadata into a DOM and
+   * indexing it is the bulk of a client's heap; the resolver holds no tenant specific state.
+   */
+  static class SharedIdpMetadata {
+    private final IdpMetadata idpMetadata;
+    private final SAML2MetadataResolver resolver;
+
+    SharedIdpMetadata(IdpMetadata idpMetadata) {
+      this.idpMetadata = idpMetadata;
+      var cfg = new SAML2Configuration();
+      cfg.setIdentityProviderMetadataResource(idpMetadata.toResource());
+      this.resolver = new SAML2IdentityProviderMetadataResolver(cfg);
+    }
+
+    IdpMetadata getIdpMetadata() {
+      return idpMetadata;
+    }
+
+    SAML2MetadataResolver getResolver() {
+      return resolver;
+    }
+
+    /**
+     * Parse the metadata if not done yet; blocking. Clients of several tenants may initialize in parallel.
+     */
+    synchronized void resolve() {
+      resolver.resolve();
+    }
+  }
+
   public static class SamlIdpUrlFormationException extends RuntimeException {
     private static final long serialVersionUID = 7340537453740028326L;
 
@@ -80,104 +119,173 @@ public class SamlClientLoader {
   public static Future<SamlClientComposite> loadFromConfiguration(RoutingContext routingContext,
     boolean generateMissingKeyStore, Context vertxContext) {
     OkapiHeaders okapiHeaders = OkapiHelper.okapiHeaders(routingContext);
-    final String tenantId = okapiHeaders.getTenant();
     ConfigurationsDao configurationsDao = new ConfigurationsDaoImpl();
+
+    return configurationsDao.getConfiguration(vertxContext.owner(), okapiHeaders, false)
+      .compose(samlConfiguration -> loadFromConfiguration(samlConfiguration, okapiHeaders.getTenant(),
+          generateMissingKeyStore ? okapiHeaders : null, vertxContext));
+  }
+
+  /**
+   * Load the client of the tenant from an already read configuration without Okapi request, for
+   * example for warm-up. A configuration without keystore fails, the keystore is generated by
+   * requests only.
+   */
+  public static Future<SamlClientComposite> loadFromConfiguration(SamlConfiguration samlConfiguration,
+    String tenantId, Context vertxContext) {
+    return loadFromConfiguration(samlConfiguration, tenantId, null, vertxContext);
+  }
+
+  /**
+   * @param okapiHeaders for storing a generated keystore, null if a missing keystore must not be generated
+   */
+  private static Future<SamlClientComposite> loadFromConfiguration(SamlConfiguration samlConfiguration,
+    String tenantId, OkapiHeaders okapiHeaders, Context vertxContext) {
+
     Vertx vertx = vertxContext.owner();
+    final String idpUrl = samlConfiguration.getIdpUrl();
+    final String keystore = samlConfiguration.getKeystore();
+    final String keystorePassword = samlConfiguration.getKeystorePassword();
+    final String privateKeyPassword = samlConfiguration.getPrivateKeyPassword();
 
-    return configurationsDao.getConfiguration(vertx, okapiHeaders, false)
-      .compose(samlConfiguration -> {
-        final String idpUrl = samlConfiguration.getIdpUrl();
-        final String keystore = samlConfiguration.getKeystore();
-        final String keystorePassword = samlConfiguration.getKeystorePassword();
-        final String privateKeyPassword = samlConfiguration.getPrivateKeyPassword();
-        final String samlBinding = samlConfiguration.getSamlBinding();
-        final Resource idpMetadata = samlConfiguration.getIdpMetadata() != null ?
-            new ByteArrayResource(samlConfiguration.getIdpMetadata().getBytes()) : null;
-        final String okapiUrl = samlConfiguration.getOkapiUrl();
-        final String callback = samlConfiguration.getCallback() == null ?
-            CALLBACK_WITH_EXPIRY : samlConfiguration.getCallback();
-
-        if (StringUtils.isBlank(idpUrl)) {
-          return Future.failedFuture("There is no IdP configuration stored!");
-        }
-        if (StringUtils.isBlank(keystore)) {
-          if (!generateMissingKeyStore) {
-            return Future.failedFuture("No KeyStore stored in configuration and regeneration is not allowed.");
-          }
-          // Generate new KeyStore
-          final String randomId = RandomStringUtils.randomAlphanumeric(12);
-          final String randomFileName = RandomStringUtils.randomAlphanumeric(12);
-
-          final String actualKeystorePassword = StringUtils.isBlank(keystorePassword) ? randomId : keystorePassword;
-          final String actualPrivateKeyPassword = StringUtils.isBlank(privateKeyPassword) ? randomId : privateKeyPassword;
-          final String keystoreFileName = "temp_" + randomFileName + ".jks";
-
-          var cfg = getSaml2ConfigurationForFileResource(keystoreFileName, actualKeystorePassword,
-              actualPrivateKeyPassword, idpUrl, idpMetadata);
-          var saml2Client = assembleSaml2Client(okapiUrl, tenantId, cfg, samlBinding, vertxContext, callback);
-
-          return vertx.executeBlocking(blockingHandler -> {
-            saml2Client.init();
-            blockingHandler.complete();
-          }).compose(res ->
-            storeKeystore(okapiHeaders, vertx, keystoreFileName, actualKeystorePassword, actualPrivateKeyPassword, configurationsDao)
-              .map(keystoreBytes -> {
-                ByteArrayResource keystoreResource = new ByteArrayResource(keystoreBytes.getBytes());
-                try {
-                  UrlResource idpUrlResource = new UrlResource(idpUrl);
-                  var reinitializedConfig = getSaml2ConfigurationForByteArrayResource(keystoreResource,
-                      actualKeystorePassword, actualPrivateKeyPassword, idpUrlResource, idpMetadata);
-                  var reinitializedSaml2Client = assembleSaml2Client(okapiUrl, tenantId, reinitializedConfig,
-                      samlBinding, vertxContext, callback);
-
-                  return new SamlClientComposite(reinitializedSaml2Client, samlConfiguration);
-                } catch (MalformedURLException e) {
-                  log.error("Saml IdP url was malformed", e);
-                  throw new SamlIdpUrlFormationException(e.getMessage());
-                }
-              })
-          );
-        }
-        // Load KeyStore from configuration
-        Buffer keystoreBytes = Buffer.buffer(Base64.getDecoder().decode(keystore));
-        ByteArrayResource keystoreResource = new ByteArrayResource(keystoreBytes.getBytes());
-        try {
-          UrlResource idpUrlResource = new UrlResource(idpUrl);
-          var cfg = getSaml2ConfigurationForByteArrayResource(keystoreResource, keystorePassword,
-            privateKeyPassword, idpUrlResource, idpMetadata);
-          var saml2Client = assembleSaml2Client(okapiUrl, tenantId, cfg, samlBinding, vertxContext, callback);
-
-          return Future.succeededFuture(new SamlClientComposite(saml2Client, samlConfiguration));
-        } catch (MalformedURLException e) {
-          log.error("Saml IdP url was malformed", e);
-          throw new SamlIdpUrlFormationException(e.getMessage());
+    if (StringUtils.isBlank(idpUrl)) {
+      return Future.failedFuture("There is no IdP configuration stored!");
+    }
+    if (StringUtils.isBlank(keystore) && okapiHeaders == null) {
+      return Future.failedFuture("No KeyStore stored in configuration and regeneration is not allowed.");
+    }
+    idpUrlResource(idpUrl); // fail early on a malformed URL
+
+    return SamlMetrics.time(Phase.IDP_METADATA_FETCH, tenantId,
+        () -> loadIdpMetadata(vertx, idpUrl, samlConfiguration.getIdpMetadata(), samlConfiguration.getIdpEntityId()))
+      .compose(idpMetadata -> {
+        if (StringUtils.isNotBlank(keystore)) {
+          return createClient(vertxContext, tenantId, samlConfiguration, idpMetadata);
         }
-      });
+        // Generate new KeyStore
+        final String randomId = RandomStringUtils.randomAlphanumeric(12);
+        final String actualKeystorePassword = StringUtils.isBlank(keystorePassword) ? randomId : keystorePassword;
+        final String actualPrivateKeyPassword = StringUtils.isBlank(privateKeyPassword) ? randomId : privateKeyPassword;
+
+        return KeystoreGenerator.getInstance().generate(vertx, actualKeystorePassword, actualPrivateKeyPassword)
+          .compose(keystoreBytes -> storeKeystore(okapiHeaders, vertx, keystoreBytes,
+              actualKeystorePassword, actualPrivateKeyPassword, new ConfigurationsDaoImpl()))
+          .compose(storedConfiguration -> createClient(vertxContext, tenantId, storedConfiguration, idpMetadata))
+          .onFailure(e -> dropUnreferencedIndex(idpMetadata));
+      })
+      .onSuccess(clientComposite -> IdpMetadataRefresher.start(vertxContext, tenantId, clientComposite));
   }
 
   /**
-   * Store KeyStore (as Base64 string), KeyStorePassword and PrivateKeyPassword in mod-configuration,
-   * complete returned future with original file bytes.
+   * Drop the federation index the metadata has been selected from if no client has been built from it.
    */
-  private static Future<Buffer> storeKeystore(OkapiHeaders okapiHeaders, Vertx vertx, String keystoreFileName,
-    String keystorePassword, String privateKeyPassword, ConfigurationsDao configurationsDao) {
+  static void dropUnreferencedIndex(IdpMetadata idpMetadata) {
+    if (idpMetadata.getAggregateUrl() != null) {
+      FederationMetadataStore.getInstance().dropUnreferenced(idpMetadata.getAggregateUrl());
+    }
+  }
+
+  /**
+   * Create and initialize the client of a configuration that has a keystore.
+   *
+   * <p>The IdP metadata and its parsed resolver are taken from {@link #SHARED_IDP_METADATA}, so tenants
+   * with identical content share a single copy; the returned composite releases it when it is released.
+   * The decoded keystore and its credentials are taken from {@link KeystoreCredentialCache}, they survive
+   * the release.
+   */
+  static Future<SamlClientComposite> createClient(Context vertxContext, String tenantId,
+    SamlConfiguration samlConfiguration, IdpMetadata idpMetadata) {
+
+    final String metadataKey = idpMetadata.getHash() + "/" + idpMetadata.getContentHash();
+    final SharedIdpMetadata shared = SHARED_IDP_METADATA.acquire(metadataKey, () -> new SharedIdpMetadata(idpMetadata));
+    final IdpMetadata sharedIdpMetadata = shared.getIdpMetadata();
+    final String aggregateUrl = idpMetadata.getAggregateUrl();
+    final boolean indexed = aggregateUrl != null && FederationMetadataStore.getInstance().acquire(aggregateUrl);
+    final Runnable release = () -> {
+      SHARED_IDP_METADATA.release(metadataKey);
+      if (indexed) {
+        FederationMetadataStore.getInstance().release(aggregateUrl);
+      }
+    };
+    try {
+      var credentials = KeystoreCredentialCache.getInstance().get(samlConfiguration.getKeystore(),
+        samlConfiguration.getKeystorePassword(), samlConfiguration.getPrivateKeyPassword());
+      ByteArrayResource keystoreResource = new ByteArrayResource(credentials.getKeystore());
+      var cfg = getSaml2ConfigurationForByteArrayResource(keystoreResource, samlConfiguration.getKeystorePassword(),
+        samlConfiguration.getPrivateKeyPassword(), idpUrlResource(samlConfiguration.getIdpUrl()),
+        sharedIdpMetadata.toResource());
+      cfg.setIdentityProviderMetadataResolver(shared.getResolver());
+      var saml2Client = assembleSaml2Client(samlConfiguration.getOkapiUrl(), tenantId, cfg,
+        samlConfiguration.getSamlBinding(), vertxContext, callback(samlConfiguration), credentials);
+      return initialize(vertxContext.owner(), saml2Client, shared::resolve)
+        .map(client -> new SamlClientComposite(client, samlConfiguration, sharedIdpMetadata).onRelease(release))
+        .onFailure(e -> release.run());
+    } catch (RuntimeException e) {
+      release.run();
+      throw e;
+    }
+  }
+
+  /**
+   * Run {@link SAML2Client#init()} on a worker thread: OpenSAML bootstrap, keystore decryption
+   * and metadata resolver setup are blocking and take several hundred milliseconds.
+   *
+   * <p>Unordered, the clients of different tenants may initialize in parallel.
+   *
+   * @param prepare blocking code to run on the worker thread before the initialization
+   */
+  static Future<SAML2Client> initialize(Vertx vertx, SAML2Client saml2Client, Runnable prepare) {
+    return SamlMetrics.time(Phase.CLIENT_INIT, saml2Client.getName(), () -> vertx.executeBlocking(() -> {
+      prepare.run();
+      saml2Client.init();
+      return saml2Client;
+    }, false));
+  }
+
+  private static String callback(SamlConfiguration samlConfiguration) {
+    return samlConfiguration.getCallback() == null ? CALLBACK_WITH_EXPIRY : samlConfiguration.getCallback();
+  }
+
+  private static UrlResource idpUrlResource(String idpUrl) {
+    try {
+      return new UrlResource(idpUrl);
+    } catch (MalformedURLException e) {
+      log.error("Saml IdP url was malformed", e);
+      throw new SamlIdpUrlFormationException(e.getMessage());
+    }
+  }
+
+  /**
+   * The IdP metadata stored in the configuration, otherwise the IdP metadata fetched from idpUrl.
+   *
+   * <p>pac4j gets an in-memory resource in both cases. This avoids the blocking I/O of
+   * a {@link UrlResource} in pac4j's lazy initialization that may run on the event loop.
+   * Of a fetched federation aggregate only the EntityDescriptor of the IdP is used, see
+   * {@link FederationMetadataStore}.
+   *
+   * @param idpEntityId entityID of the IdP in a federation aggregate, null if the aggregate has one IdP only
+   */
+  static Future<IdpMetadata> loadIdpMetadata(Vertx vertx, String idpUrl, String idpMetadata, String idpEntityId) {
+    if (idpMetadata != null) {
+      return Future.succeededFuture(new IdpMetadata(Buffer.buffer(idpMetadata), null, null));
+    }
+    return IdpMetadataFetcher.fetch(vertx, idpUrl, null)
+      .compose(fetched -> FederationMetadataStore.getInstance().select(vertx, idpUrl, fetched, idpEntityId));
+  }
 
-    // read generated jks file
-    return vertx.fileSystem().readFile(keystoreFileName).compose(fileResult -> {
-      final byte[] rawBytes = fileResult.getBytes();
-      // base64 encode
-      Buffer encodedBytes = Buffer.buffer(Base64.getEncoder().encode(rawBytes));
+  /**
+   * Store KeyStore (as Base64 string), KeyStorePassword and PrivateKeyPassword in the configuration,
+   * complete returned future with the stored configuration.
+   */
+  private static Future<SamlConfiguration> storeKeystore(OkapiHeaders okapiHeaders, Vertx vertx, byte[] keystore,
+    String keystorePassword, String privateKeyPassword, ConfigurationsDao configurationsDao) {
 
-      // store in local database with passwords
-      Map<String, String> map2Update = new HashMap<>();
-      map2Update.put(SamlConfiguration.KEYSTORE_FILE_CODE, encodedBytes.toString(StandardCharsets.UTF_8));
-      map2Update.put(SamlConfiguration.KEYSTORE_PASSWORD_CODE, keystorePassword);
-      map2Update.put(SamlConfiguration.KEYSTORE_PRIVATEKEY_PASSWORD_CODE, privateKeyPassword);
-      map2Update.put(SamlConfiguration.METADATA_INVALIDATED_CODE, "true"); // if keystore modified, current metadata is invalid.
-      return configurationsDao.storeEntry(vertx, okapiHeaders, map2Update)
-        .compose(res -> vertx.fileSystem().delete(keystoreFileName))
-        .map(x -> Buffer.buffer(rawBytes));
-      });
+    Map<String, String> map2Update = new HashMap<>();
+    map2Update.put(SamlConfiguration.KEYSTORE_FILE_CODE, Base64.getEncoder().encodeToString(keystore));
+    map2Update.put(SamlConfiguration.KEYSTORE_PASSWORD_CODE, keystorePassword);
+    map2Update.put(SamlConfiguration.KEYSTORE_PRIVATEKEY_PASSWORD_CODE, privateKeyPassword);
+    map2Update.put(SamlConfiguration.METADATA_INVALIDATED_CODE, "true"); // if keystore modified, current metadata is invalid.
+    return configurationsDao.storeEntry(vertx, okapiHeaders, map2Update);
   }
 
   protected static SAML2Configuration getSaml2ConfigurationForByteArrayResource(ByteArrayResource keystoreResource,
@@ -193,19 +301,6 @@ public class SamlClientLoader {
     return cfg;
   }
 
-  protected static SAML2Configuration getSaml2ConfigurationForFileResource(String keystoreFileName,
-                                                                         String keystorePassword,
-                                                                         String keystorePrivateKeyPassword,
-                                                                         String idpUrlResource,
-                                                                         Resource idpMetadata) {
-    final var cfg = new SAML2Configuration(keystoreFileName,
-      keystorePassword,
-      keystorePrivateKeyPassword,
-      idpUrlResource);
-    configure(cfg, idpMetadata);
-    return cfg;
-  }
-
   private static void configure(SAML2Configuration saml2configuration, Resource idpMetadata) {
     if (idpMetadata != null) {
       saml2configuration.setIdentityProviderMetadataResource(idpMetadata);
@@ -216,15 +311,26 @@ public class SamlClientLoader {
   protected static SAML2Client assembleSaml2Client(String okapiUrl, String tenantId, SAML2Configuration cfg,
     String samlBinding, Context vertxContext, String callback) {
 
+    return assembleSaml2Client(okapiUrl, tenantId, cfg, samlBinding, vertxContext, callback, null);
+  }
+
+  /**
+   * @param credentials cache entry of the keystore of cfg, null to load the keystore from cfg
+   */
+  protected static SAML2Client assembleSaml2Client(String okapiUrl, String tenantId, SAML2Configuration cfg,
+    String samlBinding, Context vertxContext, String callback, KeystoreCredentialCache.Entry credentials) {
+
     if ("REDIRECT".equals(samlBinding)) {
       cfg.setAuthnRequestBindingType(SAMLConstants.SAML2_REDIRECT_BINDING_URI);
     } else {
       // POST is the default
       cfg.setAuthnRequestBindingType(SAMLConstants.SAML2_POST_BINDING_URI);
     }
+    cfg.setReplayCache(DistributedReplayCache.getInstance().provider(tenantId));
 
     Boolean mock = vertxContext.config().getBoolean("mock", false);
-    SAML2Client saml2Client = Boolean.TRUE.equals(mock) ? new SAML2ClientMock(cfg) : new SAML2Client(cfg);
+    SAML2Client saml2Client = Boolean.TRUE.equals(mock)
+        ? new SAML2ClientMock(cfg, credentials) : new FolioSaml2Client(cfg, credentials);
     saml2Client.setName(tenantId);
     saml2Client.setCallbackUrl(buildCallbackUrl(okapiUrl, tenantId, callback));
     saml2Client.setRedirectionActionBuilder(new JsonReponseSaml2RedirectActionBuilder(saml2Client));
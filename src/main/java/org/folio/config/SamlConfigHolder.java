@@ -1,49 +1,479 @@
 package org.folio.config;
 
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.config.model.IdpMetadata;
 import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SpMetadata;
+import org.folio.metrics.SamlMetrics;
 import org.pac4j.core.config.Config;
 import org.springframework.util.Assert;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 /**
  * Singleton for holding Pac4j {@link Config}
  *
+ * <p>Shared by all verticle instances, so all access is thread-safe. Concurrent lookups of a tenant
+ * that has no client yet share a single load, see {@link #findOrLoadClient(String, Supplier)}.
+ * Loads of a tenant whose loads fail repeatedly fail fast, see {@link ClientLoadBreaker}.
+ *
+ * <p>The number of clients and their estimated size can be bounded: the least recently used clients
+ * are evicted when a new client exceeds a bound. Clients that have not been used for the idle TTL
+ * are evicted by a sweep that runs on lookups. All bounds are disabled by default.
+ *
  * @author rsass
  */
 public class SamlConfigHolder {
 
-  private static SamlConfigHolder instance;
-  private Map<String, SamlClientComposite> config; // key: tenantId
+  /** rough size of the pac4j and OpenSAML objects of a client without its metadata, in bytes */
+  static final long CLIENT_BASE_SIZE = 256 * 1024L;
+  /** parsed IdP metadata is about this many times larger than its XML */
+  static final int PARSED_XML_FACTOR = 10;
+  /** in seconds */
+  static final long IDLE_SWEEP_INTERVAL = 60;
+
+  private static final Logger log = LogManager.getLogger(SamlConfigHolder.class);
+  private static final SamlConfigHolder instance = new SamlConfigHolder(System::nanoTime);
+  private final ConcurrentMap<String, SamlClientComposite> config = new ConcurrentHashMap<>(); // key: tenantId
+  private final ConcurrentMap<String, Future<SamlClientComposite>> loading = new ConcurrentHashMap<>(); // key: tenantId
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder loadFailures = new LongAdder();
+  private final LongAdder sizeEvictions = new LongAdder();
+  private final LongAdder idleEvictions = new LongAdder();
+  private final ClientLoadBreaker breaker = ClientLoadBreaker.getInstance();
+  private final LongSupplier nanoClock;
+  private volatile int maxEntries;
+  private volatile long maxBytes;
+  private volatile long idleTtlNanos;
+  private volatile long lastSweepNanos;
 
-  private SamlConfigHolder() {
-    // new empty client list
-    this.config = new HashMap<>();
+  SamlConfigHolder(LongSupplier nanoClock) {
+    this.nanoClock = nanoClock;
+    this.lastSweepNanos = nanoClock.getAsLong();
   }
 
   public static SamlConfigHolder getInstance() {
-    if (instance == null) {
-      instance = new SamlConfigHolder();
-    }
     return instance;
   }
 
+  /**
+   * @param entries value of the CLIENT_CACHE_MAX_ENTRIES environment variable: maximum number of clients,
+   *                0 or null for no limit
+   */
+  public void setMaxEntries(String entries) {
+    try {
+      int value = entries == null ? 0 : Integer.parseInt(entries);
+      if (value < 0) {
+        throw new NumberFormatException();
+      }
+      maxEntries = value;
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable "
+          + "CLIENT_CACHE_MAX_ENTRIES: \"" + entries + "\"");
+    }
+  }
+
+  /**
+   * @param bytes value of the CLIENT_CACHE_MAX_BYTES environment variable: maximum estimated size of all
+   *              clients in bytes, see {@link #estimateSize(SamlClientComposite)}, 0 or null for no limit
+   */
+  public void setMaxBytes(String bytes) {
+    try {
+      long value = bytes == null ? 0 : Long.parseLong(bytes);
+      if (value < 0) {
+        throw new NumberFormatException();
+      }
+      maxBytes = value;
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable "
+          + "CLIENT_CACHE_MAX_BYTES: \"" + bytes + "\"");
+    }
+  }
+
+  /**
+   * @param seconds value of the CLIENT_CACHE_IDLE_TTL environment variable: number of seconds after the
+   *                last lookup a client is evicted, 0 or null to keep idle clients
+   */
+  public void setIdleTtl(String seconds) {
+    try {
+      long value = seconds == null ? 0 : Long.parseLong(seconds);
+      if (value < 0) {
+        throw new NumberFormatException();
+      }
+      idleTtlNanos = TimeUnit.SECONDS.toNanos(value);
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable "
+          + "CLIENT_CACHE_IDLE_TTL: \"" + seconds + "\"");
+    }
+  }
+
   public Map<String, SamlClientComposite> getConfig() {
     return config;
   }
 
+  /**
+   * @return the client of the tenant, null if none; not a use of the client for the idle TTL
+   */
   public SamlClientComposite findClient(String tenantId) {
+    if (tenantId == null) {
+      return null;
+    }
     return this.config.get(tenantId);
   }
 
   public void removeClient(String tenantId) {
-    this.config.remove(tenantId);
+    if (tenantId == null) {
+      return;
+    }
+    releaseRemoved(tenantId, this.config.remove(tenantId));
+  }
+
+  /**
+   * Remove the client of the tenant only if it is still expected.
+   *
+   * @return true if removed, false if the tenant has a different client or none
+   */
+  public boolean removeClient(String tenantId, SamlClientComposite expected) {
+    if (tenantId == null || !this.config.remove(tenantId, expected)) {
+      return false;
+    }
+    releaseRemoved(tenantId, expected);
+    return true;
+  }
+
+  /**
+   * Release a client removed from the tenant and drop the size gauge of the tenant.
+   */
+  private void releaseRemoved(String tenantId, SamlClientComposite removed) {
+    if (removed == null) {
+      return;
+    }
+    // a concurrent putClient may have stored a new client of the tenant
+    if (!this.config.containsKey(tenantId)) {
+      SamlMetrics.removeClientSize(tenantId);
+    }
+    release(removed);
   }
 
   public void putClient(String tenantId, SamlClientComposite clientComposite) {
     Assert.hasText(tenantId, "tenantId cannot be empty!");
     Assert.notNull(clientComposite, "clientComposite cannot be null!");
-    this.config.put(tenantId, clientComposite);
+    clientComposite.touch(nanoClock.getAsLong());
+    SamlClientComposite previous = this.config.put(tenantId, clientComposite);
+    if (previous != clientComposite) {
+      release(previous);
+    }
+    SamlMetrics.registerClientSize(tenantId);
+    evictLeastRecentlyUsed();
+  }
+
+  /**
+   * Replace the client of the tenant only if it is still expected.
+   *
+   * @return true if replaced, false if the tenant has a different client or none
+   */
+  public boolean replaceClient(String tenantId, SamlClientComposite expected, SamlClientComposite clientComposite) {
+    Assert.hasText(tenantId, "tenantId cannot be empty!");
+    Assert.notNull(clientComposite, "clientComposite cannot be null!");
+    clientComposite.touch(expected == null ? nanoClock.getAsLong() : expected.getLastAccessNanos());
+    if (!this.config.replace(tenantId, expected, clientComposite)) {
+      return false;
+    }
+    release(expected);
+    return true;
+  }
+
+  /**
+   * Return the client of the tenant, load it if there is none.
+   *
+   * <p>Concurrent calls for the same tenant share the future of a single loader invocation.
+   * A successfully loaded client is stored, a failed load is not cached. An exception thrown
+   * by the loader is rethrown to the caller that has invoked it.
+   *
+   * @param tenantId the tenant, null disables caching
+   * @param loader   creates the client
+   */
+  public Future<SamlClientComposite> findOrLoadClient(String tenantId,
+    Supplier<Future<SamlClientComposite>> loader) {
+
+    return findOrLoadClient(tenantId, loader, true);
+  }
+
+  /**
+   * Like {@link #findOrLoadClient(String, Supplier)} but the load neither asks the
+   * {@link ClientLoadBreaker} for permission nor reports its result to it.
+   */
+  public Future<SamlClientComposite> warmUpClient(String tenantId, Supplier<Future<SamlClientComposite>> loader) {
+    return findOrLoadClient(tenantId, loader, false);
+  }
+
+  private Future<SamlClientComposite> findOrLoadClient(String tenantId,
+    Supplier<Future<SamlClientComposite>> loader, boolean guarded) {
+
+    if (tenantId == null) {
+      return loader.get();
+    }
+    evictIdle();
+    SamlClientComposite clientComposite = touch(config.get(tenantId));
+    if (clientComposite != null) {
+      hits.increment();
+      return Future.succeededFuture(clientComposite);
+    }
+    Promise<SamlClientComposite> promise = Promise.promise();
+    Future<SamlClientComposite> inFlight = loading.putIfAbsent(tenantId, promise.future());
+    if (inFlight != null) {
+      coalesced.increment();
+      return onCurrentContext(inFlight);
+    }
+    // a load may have completed between config.get and loading.putIfAbsent
+    clientComposite = config.get(tenantId);
+    if (clientComposite != null) {
+      loading.remove(tenantId, promise.future());
+      hits.increment();
+      promise.complete(clientComposite);
+      return promise.future();
+    }
+    misses.increment();
+    return load(tenantId, promise, loader, guarded);
+  }
+
+  /**
+   * Drop the client of the tenant and load a new one. Calls of {@link #findOrLoadClient(String, Supplier)}
+   * arriving after this call wait for the new client; the result of a load that was in flight before
+   * this call is not stored.
+   */
+  public Future<SamlClientComposite> reloadClient(String tenantId, Supplier<Future<SamlClientComposite>> loader) {
+    if (tenantId == null) {
+      return loader.get();
+    }
+    releaseRemoved(tenantId, config.remove(tenantId));
+    Promise<SamlClientComposite> promise = Promise.promise();
+    loading.put(tenantId, promise.future());
+    misses.increment();
+    return load(tenantId, promise, loader, true);
+  }
+
+  /**
+   * @param guarded whether the {@link ClientLoadBreaker} permits and counts the load
+   */
+  private Future<SamlClientComposite> load(String tenantId, Promise<SamlClientComposite> promise,
+    Supplier<Future<SamlClientComposite>> loader, boolean guarded) {
+
+    Future<SamlClientComposite> future;
+    if (guarded) {
+      try {
+        breaker.acquire(tenantId);
+      } catch (ClientLoadBreaker.OpenException e) {
+        loading.remove(tenantId, promise.future());
+        promise.fail(e);
+        return promise.future();
+      }
+    }
+    try {
+      future = loader.get();
+    } catch (RuntimeException e) {
+      loading.remove(tenantId, promise.future());
+      loadFailures.increment();
+      if (guarded) {
+        breaker.onFailure(tenantId);
+      }
+      promise.fail(e);
+      throw e;
+    }
+    future.onComplete(result -> {
+      // only the most recent load of the tenant is stored
+      boolean current = loading.remove(tenantId, promise.future());
+      if (result.failed()) {
+        loadFailures.increment();
+        if (guarded) {
+          breaker.onFailure(tenantId);
+        }
+      } else {
+        if (guarded) {
+          breaker.onSuccess(tenantId);
+        }
+        if (current) {
+          putClient(tenantId, result.result());
+        } else {
+          // superseded: only the caller of this load uses it
+          release(result.result());
+        }
+      }
+      promise.handle(result);
+    });
+    return promise.future();
+  }
+
+  private SamlClientComposite touch(SamlClientComposite clientComposite) {
+    if (clientComposite != null) {
+      clientComposite.touch(nanoClock.getAsLong());
+    }
+    return clientComposite;
+  }
+
+  /**
+   * Evict the clients that have not been looked up for the idle TTL, at most once per sweep interval.
+   */
+  void evictIdle() {
+    long ttl = idleTtlNanos;
+    long now = nanoClock.getAsLong();
+    if (ttl == 0 || now - lastSweepNanos < Math.min(ttl, TimeUnit.SECONDS.toNanos(IDLE_SWEEP_INTERVAL))) {
+      return;
+    }
+    lastSweepNanos = now;
+    config.forEach((tenantId, clientComposite) -> {
+      if (now - clientComposite.getLastAccessNanos() >= ttl && removeClient(tenantId, clientComposite)) {
+        idleEvictions.increment();
+        log.info("Evicted SAML client of tenant {}: idle", tenantId);
+      }
+    });
+  }
+
+  /**
+   * Evict the least recently used clients while a bound is exceeded; the last client is kept.
+   */
+  private synchronized void evictLeastRecentlyUsed() {
+    while (config.size() > 1 && isOverBounds()) {
+      Map.Entry<String, SamlClientComposite> oldest = null;
+      for (Map.Entry<String, SamlClientComposite> entry : config.entrySet()) {
+        if (oldest == null
+            || entry.getValue().getLastAccessNanos() - oldest.getValue().getLastAccessNanos() < 0) {
+          oldest = entry;
+        }
+      }
+      if (oldest != null && removeClient(oldest.getKey(), oldest.getValue())) {
+        sizeEvictions.increment();
+        log.info("Evicted SAML client of tenant {}: cache bound exceeded", oldest.getKey());
+      }
+    }
+  }
+
+  private boolean isOverBounds() {
+    return (maxEntries > 0 && config.size() > maxEntries)
+        || (maxBytes > 0 && getEstimatedSize() > maxBytes);
+  }
+
+  /**
+   * Rough estimate of the heap used by the client: a fixed size for the client, the parsed IdP metadata,
+   * the keystore and the SP metadata. IdP metadata shared with other clients is counted for each.
+   */
+  public static long estimateSize(SamlClientComposite clientComposite) {
+    long size = CLIENT_BASE_SIZE;
+    IdpMetadata idpMetadata = clientComposite.getIdpMetadata();
+    if (idpMetadata != null) {
+      size += (long) idpMetadata.getBytes().length * PARSED_XML_FACTOR;
+    }
+    String keystore = clientComposite.getConfiguration().getKeystore();
+    if (keystore != null) {
+      size += keystore.length();
+    }
+    SpMetadata spMetadata = clientComposite.getSpMetadata();
+    if (spMetadata != null) {
+      size += spMetadata.getContent().length();
+    }
+    return size;
+  }
+
+  /**
+   * @return estimated size of the client of the tenant in bytes, 0 if none
+   */
+  public long getEstimatedSize(String tenantId) {
+    SamlClientComposite clientComposite = config.get(tenantId);
+    return clientComposite == null ? 0 : estimateSize(clientComposite);
+  }
+
+  /**
+   * @return estimated size of all clients in bytes
+   */
+  public long getEstimatedSize() {
+    long size = 0;
+    for (SamlClientComposite clientComposite : config.values()) {
+      size += estimateSize(clientComposite);
+    }
+    return size;
+  }
+
+  /**
+   * @return number of clients evicted because a bound was exceeded
+   */
+  public long getSizeEvictions() {
+    return sizeEvictions.sum();
+  }
+
+  /**
+   * @return number of clients evicted because they were idle
+   */
+  public long getIdleEvictions() {
+    return idleEvictions.sum();
+  }
+
+  /**
+   * Release the shared content of a client that is no longer held.
+   */
+  private static void release(SamlClientComposite clientComposite) {
+    if (clientComposite != null) {
+      clientComposite.release();
+    }
+  }
+
+  /**
+   * Complete on the context of the caller, not on the context of the verticle instance
+   * that happens to run the shared load.
+   */
+  private static <T> Future<T> onCurrentContext(Future<T> future) {
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      return future;
+    }
+    Promise<T> promise = Promise.promise();
+    future.onComplete(result -> {
+      if (Vertx.currentContext() == context) {
+        promise.handle(result);
+      } else {
+        context.runOnContext(x -> promise.handle(result));
+      }
+    });
+    return promise.future();
+  }
+
+  /**
+   * @return number of lookups answered by an already loaded client
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return number of lookups that started a load
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return number of lookups that waited for a load started by another lookup
+   */
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  /**
+   * @return number of failed loads
+   */
+  public long getLoadFailures() {
+    return loadFailures.sum();
   }
 }
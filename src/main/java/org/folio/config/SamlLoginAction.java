@@ -0,0 +1,34 @@
+package org.folio.config;
+
+import io.vertx.core.json.Json;
+import org.folio.rest.jaxrs.model.SamlLogin;
+import org.pac4j.core.exception.http.OkAction;
+
+/**
+ * {@link OkAction} that carries the {@link SamlLogin} DTO so that the login endpoint can return it
+ * without a JSON encode/decode round-trip. The JSON content is only encoded if
+ * {@link #getContent()} is called.
+ */
+public class SamlLoginAction extends OkAction {
+  private static final long serialVersionUID = 7340537453740028330L;
+
+  private final transient SamlLogin samlLogin;
+  private String content;
+
+  public SamlLoginAction(SamlLogin samlLogin) {
+    super(null);
+    this.samlLogin = samlLogin;
+  }
+
+  public SamlLogin getSamlLogin() {
+    return samlLogin;
+  }
+
+  @Override
+  public String getContent() {
+    if (content == null) {
+      content = Json.encode(samlLogin);
+    }
+    return content;
+  }
+}
@@ -0,0 +1,73 @@
+package org.folio.config;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed, reference counted pool of immutable values shared by the clients of all tenants.
+ *
+ * <p>The key must be derived from the content, for example by {@link #sha256(byte[])}.
+ * Each {@link #acquire(String, Supplier)} must be paired with one {@link #release(String)};
+ * the value is dropped from the pool when the last reference has been released.
+ *
+ * @param <T> the value type, must not be modified after creation
+ */
+public class SharedContent<T> {
+
+  private final ConcurrentMap<String, Entry<T>> entries = new ConcurrentHashMap<>();
+
+  private static class Entry<T> {
+    private final T value;
+    /** guarded by the map's lock of the key */
+    private int references;
+
+    Entry(T value) {
+      this.value = value;
+    }
+  }
+
+  /**
+   * Return the pooled value of the key, create it with factory if there is none.
+   */
+  public T acquire(String key, Supplier<T> factory) {
+    return entries.compute(key, (k, entry) -> {
+      Entry<T> result = entry == null ? new Entry<>(factory.get()) : entry;
+      result.references++;
+      return result;
+    }).value;
+  }
+
+  public void release(String key) {
+    entries.computeIfPresent(key, (k, entry) -> --entry.references <= 0 ? null : entry);
+  }
+
+  /**
+   * @return number of distinct values in the pool
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return number of references to the value of the key
+   */
+  public int references(String key) {
+    Entry<T> entry = entries.get(key);
+    return entry == null ? 0 : entry.references;
+  }
+
+  /**
+   * @return SHA-256 of bytes, hex encoded
+   */
+  public static String sha256(byte[] bytes) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
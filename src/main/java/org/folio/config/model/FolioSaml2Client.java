@@ -0,0 +1,48 @@
+package org.folio.config.model;
+
+import java.util.Optional;
+import org.folio.config.DistributedReplayCache;
+import org.folio.config.KeystoreCredentialCache;
+import org.pac4j.core.context.WebContext;
+import org.pac4j.core.context.session.SessionStore;
+import org.pac4j.core.credentials.Credentials;
+import org.pac4j.saml.client.SAML2Client;
+import org.pac4j.saml.config.SAML2Configuration;
+
+/**
+ * {@link SAML2Client} that takes its credentials from a {@link KeystoreCredentialCache} entry
+ * instead of loading the keystore on each initialization.
+ *
+ * <p>Attaches the message id of a validated response to the request for the
+ * {@link DistributedReplayCache}.
+ */
+public class FolioSaml2Client extends SAML2Client {
+
+  private final KeystoreCredentialCache.Entry credentials;
+
+  /**
+   * @param credentials the cache entry of the keystore of cfg, null to load the keystore from cfg
+   */
+  public FolioSaml2Client(SAML2Configuration cfg, KeystoreCredentialCache.Entry credentials) {
+    super(cfg);
+    this.credentials = credentials;
+  }
+
+  @Override
+  protected void initCredentialProvider() {
+    if (credentials == null) {
+      super.initCredentialProvider();
+      return;
+    }
+    this.credentialProvider = credentials.getCredentialProvider(getConfiguration());
+  }
+
+  @Override
+  protected Optional<Credentials> retrieveCredentials(WebContext context, SessionStore sessionStore) {
+    Optional<Credentials> result = super.retrieveCredentials(context, sessionStore);
+    if (result.isPresent()) {
+      DistributedReplayCache.attach(context, getConfiguration().getAcceptedSkew());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,194 @@
+package org.folio.config.model;
+
+import io.vertx.core.buffer.Buffer;
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.folio.config.SharedContent;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * IdP metadata document together with the HTTP validators and the SAML caching hints
+ * (validUntil, cacheDuration) of its root element.
+ */
+public class IdpMetadata {
+
+  private static final Logger log = LogManager.getLogger(IdpMetadata.class);
+  private static final XMLInputFactory XML_INPUT_FACTORY = xmlInputFactory();
+
+  private final byte[] body;
+  private final String etag;
+  private final String lastModified;
+  private final String hash;
+  private final String contentHash;
+  private final Instant validUntil;
+  private final Duration cacheDuration;
+  private final boolean aggregate;
+  private final String aggregateUrl;
+
+  public IdpMetadata(Buffer body, String etag, String lastModified) {
+    this.body = body.getBytes();
+    this.etag = etag;
+    this.lastModified = lastModified;
+    this.hash = SharedContent.sha256(this.body);
+    this.contentHash = hash;
+    Instant rootValidUntil = null;
+    Duration rootCacheDuration = null;
+    boolean rootIsEntities = false;
+    try {
+      XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(this.body));
+      try {
+        while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+          // skip prolog
+        }
+        if (reader.isStartElement()) {
+          rootIsEntities = "EntitiesDescriptor".equals(reader.getLocalName());
+          rootValidUntil = validUntil(reader.getAttributeValue(null, "validUntil"));
+          rootCacheDuration = cacheDuration(reader.getAttributeValue(null, "cacheDuration"));
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException | IllegalArgumentException | DatatypeConfigurationException e) {
+      log.warn("Cannot read validUntil and cacheDuration of IdP metadata: {}", e.getMessage());
+    }
+    this.validUntil = rootValidUntil;
+    this.cacheDuration = rootCacheDuration;
+    this.aggregate = rootIsEntities;
+    this.aggregateUrl = null;
+  }
+
+  private IdpMetadata(IdpMetadata source, String aggregateUrl, byte[] body) {
+    this.body = body;
+    this.etag = source.etag;
+    this.lastModified = source.lastModified;
+    this.hash = source.hash;
+    this.contentHash = SharedContent.sha256(body);
+    this.validUntil = source.validUntil;
+    this.cacheDuration = source.cacheDuration;
+    this.aggregate = false;
+    this.aggregateUrl = aggregateUrl;
+  }
+
+  /**
+   * Metadata with a single EntityDescriptor selected from this aggregate. HTTP validators,
+   * hash and caching hints are those of the aggregate so that a refresh compares against
+   * the aggregate.
+   *
+   * @param url source URL of this aggregate
+   */
+  public IdpMetadata withEntity(String url, byte[] entityDescriptor) {
+    return new IdpMetadata(this, url, entityDescriptor);
+  }
+
+  /**
+   * @return a copy of the body
+   */
+  public Buffer getBody() {
+    return Buffer.buffer(body);
+  }
+
+  /**
+   * @return the body without copying, must not be modified
+   */
+  public byte[] getBytes() {
+    return body;
+  }
+
+  /**
+   * @return value of the ETag response header, or null
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * @return value of the Last-Modified response header, or null
+   */
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return SHA-256 of the body, hex encoded
+   */
+  public String getHash() {
+    return hash;
+  }
+
+  /**
+   * @return SHA-256 of the body, hex encoded; differs from {@link #getHash()} if the body
+   *     is an EntityDescriptor selected from an aggregate
+   */
+  public String getContentHash() {
+    return contentHash;
+  }
+
+  /**
+   * @return validUntil attribute of the root element, or null
+   */
+  public Instant getValidUntil() {
+    return validUntil;
+  }
+
+  /**
+   * @return cacheDuration attribute of the root element, or null
+   */
+  public Duration getCacheDuration() {
+    return cacheDuration;
+  }
+
+  /**
+   * @return true if the root element is an EntitiesDescriptor, for example a federation aggregate
+   */
+  public boolean isAggregate() {
+    return aggregate;
+  }
+
+  /**
+   * @return source URL of the aggregate the EntityDescriptor has been selected from, null if not
+   *     selected from an aggregate
+   */
+  public String getAggregateUrl() {
+    return aggregateUrl;
+  }
+
+  /**
+   * @return in-memory resource of the body for pac4j, sharing the body without copying
+   */
+  public Resource toResource() {
+    return new ByteArrayResource(body);
+  }
+
+  private static Instant validUntil(String value) throws DatatypeConfigurationException {
+    if (value == null) {
+      return null;
+    }
+    return DatatypeFactory.newInstance().newXMLGregorianCalendar(value.trim())
+        .toGregorianCalendar().toInstant();
+  }
+
+  private static Duration cacheDuration(String value) throws DatatypeConfigurationException {
+    if (value == null) {
+      return null;
+    }
+    return Duration.ofMillis(DatatypeFactory.newInstance().newDuration(value.trim()).getTimeInMillis(new Date()));
+  }
+
+  private static XMLInputFactory xmlInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return factory;
+  }
+}
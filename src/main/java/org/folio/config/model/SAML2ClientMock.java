@@ -1,12 +1,16 @@
 package org.folio.config.model;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.config.DistributedReplayCache;
+import org.folio.config.KeystoreCredentialCache;
 import org.opensaml.saml.saml2.core.Conditions;
 import org.opensaml.saml.saml2.core.impl.ConditionsBuilder;
 import org.opensaml.saml.saml2.core.impl.NameIDBuilder;
@@ -14,18 +18,21 @@ import org.pac4j.core.context.WebContext;
 import org.pac4j.core.context.session.SessionStore;
 import org.pac4j.core.credentials.Credentials;
 import org.pac4j.core.profile.CommonProfile;
-import org.pac4j.saml.client.SAML2Client;
 import org.pac4j.saml.config.SAML2Configuration;
 import org.pac4j.saml.credentials.SAML2Credentials;
 import org.pac4j.saml.profile.converter.SimpleSAML2AttributeConverter;
 
-public class SAML2ClientMock extends SAML2Client {
+public class SAML2ClientMock extends FolioSaml2Client {
 
   private static final Logger log = LogManager.getLogger(SAML2ClientMock.class);
   public static final String SAML_USER_ID = "saml-user-id";
 
   public SAML2ClientMock(final SAML2Configuration cfg) {
-    super(cfg);
+    this(cfg, null);
+  }
+
+  public SAML2ClientMock(final SAML2Configuration cfg, final KeystoreCredentialCache.Entry credentials) {
+    super(cfg, credentials);
     log.info("SAML2 Client MOCK mode");
   }
 
@@ -46,6 +53,7 @@ public class SAML2ClientMock extends SAML2Client {
     CommonProfile userProfile = new CommonProfile();
     userProfile.addAttribute("UserID", Arrays.asList(SAML_USER_ID));
     cred.setUserProfile(userProfile);
+    DistributedReplayCache.attach(context, UUID.randomUUID().toString(), Instant.now().plusSeconds(60));
     return Optional.of(cred);
   }
 
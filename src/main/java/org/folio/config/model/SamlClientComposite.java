@@ -1,5 +1,9 @@
 package org.folio.config.model;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.folio.config.AuthnRequestTemplate;
 import org.pac4j.saml.client.SAML2Client;
 import org.springframework.util.Assert;
 
@@ -10,12 +14,26 @@ public class SamlClientComposite {
 
   private final SAML2Client client;
   private final SamlConfiguration configuration;
+  private final IdpMetadata idpMetadata;
+  private final List<Runnable> releaseActions = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean released = new AtomicBoolean();
+  private volatile AuthnRequestTemplate authnRequestTemplate;
+  private volatile SpMetadata spMetadata;
+  private volatile long lastAccessNanos;
 
   public SamlClientComposite(SAML2Client client, SamlConfiguration configuration) {
+    this(client, configuration, null);
+  }
+
+  /**
+   * @param idpMetadata the metadata the client has been initialized with, null if unknown
+   */
+  public SamlClientComposite(SAML2Client client, SamlConfiguration configuration, IdpMetadata idpMetadata) {
     Assert.notNull(client, "Client cannot be null!");
     Assert.notNull(configuration, "Configuration cannot be null!");
     this.client = client;
     this.configuration = configuration;
+    this.idpMetadata = idpMetadata;
   }
 
   public SAML2Client getClient() {
@@ -25,4 +43,59 @@ public class SamlClientComposite {
   public SamlConfiguration getConfiguration() {
     return configuration;
   }
+
+  public IdpMetadata getIdpMetadata() {
+    return idpMetadata;
+  }
+
+  /**
+   * @return pre-rendered AuthnRequest of the client, null if none
+   */
+  public AuthnRequestTemplate getAuthnRequestTemplate() {
+    return authnRequestTemplate;
+  }
+
+  public void setAuthnRequestTemplate(AuthnRequestTemplate authnRequestTemplate) {
+    this.authnRequestTemplate = authnRequestTemplate;
+  }
+
+  /**
+   * @return serialized SP metadata of the client, null if not generated yet
+   */
+  public SpMetadata getSpMetadata() {
+    return spMetadata;
+  }
+
+  public void setSpMetadata(SpMetadata spMetadata) {
+    this.spMetadata = spMetadata;
+  }
+
+  /**
+   * @return {@link System#nanoTime()} of the last lookup of this client in {@link org.folio.config.SamlConfigHolder}
+   */
+  public long getLastAccessNanos() {
+    return lastAccessNanos;
+  }
+
+  public void touch(long nanos) {
+    this.lastAccessNanos = nanos;
+  }
+
+  /**
+   * Register an action that releases shared content used by this client, see {@link #release()}.
+   */
+  public SamlClientComposite onRelease(Runnable releaseAction) {
+    releaseActions.add(releaseAction);
+    return this;
+  }
+
+  /**
+   * Run the release actions once. Called when the client is no longer held by
+   * {@link org.folio.config.SamlConfigHolder}; requests still using it are not affected.
+   */
+  public void release() {
+    if (released.compareAndSet(false, true)) {
+      releaseActions.forEach(Runnable::run);
+    }
+  }
 }
@@ -1,5 +1,6 @@
 package org.folio.config.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.ArrayList;
@@ -21,6 +22,7 @@ public class SamlConfiguration {
   public static final String SAML_BINDING_CODE = "saml.binding";
   public static final String SAML_ATTRIBUTE_CODE = "saml.attribute";
   public static final String IDP_METADATA_CODE = "idp.metadata";
+  public static final String IDP_ENTITY_ID_CODE = "idp.entityId";
   public static final String USER_PROPERTY_CODE = "user.property";
   public static final String METADATA_INVALIDATED_CODE = "metadata.invalidated";
   public static final String OKAPI_URL= "okapi.url";
@@ -46,6 +48,8 @@ public class SamlConfiguration {
   private String userProperty;
   @JsonProperty(IDP_METADATA_CODE)
   private String idpMetadata;
+  @JsonProperty(IDP_ENTITY_ID_CODE)
+  private String idpEntityId;
   @JsonProperty(METADATA_INVALIDATED_CODE)
   private String metadataInvalidated = "true";
   @JsonProperty(OKAPI_URL)
@@ -56,6 +60,9 @@ public class SamlConfiguration {
   private List<String> idsList;
   @JsonProperty(SAML_USE_SECURE_TOKENS)
   private String useSecureTokens;
+  /** xmin of the database row it has been read from, null if not read from the database */
+  @JsonIgnore
+  private String version;
 
   public SamlConfiguration(){
     idsList = new ArrayList<>(0);
@@ -101,6 +108,17 @@ public class SamlConfiguration {
     this.idpMetadata = idpMetadata;
   }
 
+  /**
+   * @return entityID of the IdP in a federation metadata aggregate, null if the aggregate has one IdP only
+   */
+  public String getIdpEntityId() {
+    return idpEntityId;
+  }
+
+  public void setIdpEntityId(String idpEntityId) {
+    this.idpEntityId = idpEntityId;
+  }
+
   public String getIdpUrl() {
     return idpUrl;
   }
@@ -180,4 +198,12 @@ public class SamlConfiguration {
   public void setUseSecureTokens(String useSecureTokens) {
     this.useSecureTokens = useSecureTokens;
   }
+
+  public String getVersion() {
+    return version;
+  }
+
+  public void setVersion(String version) {
+    this.version = version;
+  }
 }
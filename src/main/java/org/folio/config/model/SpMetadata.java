@@ -0,0 +1,51 @@
+package org.folio.config.model;
+
+import java.nio.charset.StandardCharsets;
+import org.folio.config.SharedContent;
+
+/**
+ * Serialized SP metadata of a client with its strong ETag.
+ */
+public class SpMetadata {
+
+  private final String content;
+  private final String etag;
+
+  public SpMetadata(String content) {
+    this.content = content;
+    this.etag = "\"" + SharedContent.sha256(content.getBytes(StandardCharsets.UTF_8)) + "\"";
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  /**
+   * @return the quoted ETag
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * Weak comparison of an If-None-Match header as required by RFC 9110 section 13.1.2.
+   *
+   * @param ifNoneMatch value of the If-None-Match header, may be null
+   * @return true if the client has the current metadata
+   */
+  public boolean matches(String ifNoneMatch) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      String trimmed = tag.trim();
+      if (trimmed.startsWith("W/")) {
+        trimmed = trimmed.substring(2);
+      }
+      if ("*".equals(trimmed) || etag.equals(trimmed)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -7,6 +7,7 @@ import org.folio.config.model.SamlConfiguration;
 import org.folio.util.model.OkapiHeaders;
 
 import java.util.Map;
+import java.util.function.UnaryOperator;
 /**
  * @author barbaraloehle
  */
@@ -37,6 +38,17 @@ public interface ConfigurationsDao {
     }
   }
 
+  /**
+   * The stored configuration has been modified since it has been read.
+   */
+  public static class ConfigurationConflictException extends RuntimeException {
+    private static final long serialVersionUID = 7340537453740028333L;
+
+    public ConfigurationConflictException(String message) {
+      super(message);
+    }
+  }
+
   public Future<SamlConfiguration> dataMigration(Vertx vertx, OkapiHeaders okapiHeaders, boolean withDelete);
 
   public Future<Integer> dataMigrationLoadData(Vertx vertx, OkapiHeaders okapiHeaders, boolean withDelete);
@@ -45,5 +57,16 @@ public interface ConfigurationsDao {
 
   public Future<SamlConfiguration> storeSamlConfiguration(Vertx vertx, OkapiHeaders okapiHeaders, SamlConfiguration samlConfiguration);
 
+  /**
+   * Read the configuration, modify it and store it if it has not been modified meanwhile.
+   * On a concurrent modification the configuration is read and modified again, a bounded number of times.
+   *
+   * @param update gets a copy of the stored configuration, an empty one if there is none
+   * @return the stored configuration, failed with {@link ConfigurationConflictException} if all attempts
+   *         have been overtaken by concurrent modifications
+   */
+  public Future<SamlConfiguration> updateSamlConfiguration(Vertx vertx, OkapiHeaders okapiHeaders,
+      UnaryOperator<SamlConfiguration> update);
+
   public Future<SamlConfiguration> storeEntry(Vertx vertx, OkapiHeaders okapiHeaders, Map<String, String> map2Update);
 }
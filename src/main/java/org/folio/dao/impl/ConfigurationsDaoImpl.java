@@ -2,11 +2,17 @@ package org.folio.dao.impl;
 
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.folio.config.ConfigurationsClient;
 import org.folio.config.model.SamlConfiguration;
 import org.folio.dao.ConfigurationsDao;
+import org.folio.dao.ConfigurationsDao.ConfigurationConflictException;
 import org.folio.rest.persist.Criteria.Criterion;
 import org.folio.rest.persist.interfaces.Results;
 import org.folio.rest.persist.PostgresClient;
@@ -14,8 +20,14 @@ import org.folio.util.SamlConfigurationUtil;
 import org.folio.util.model.OkapiHeaders;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.UnaryOperator;
 
 /**
  * @author barbaraloehle
@@ -24,13 +36,42 @@ public class ConfigurationsDaoImpl implements ConfigurationsDao {
   private static final Logger LOGGER = LogManager.getLogger(ConfigurationsDaoImpl.class);
 
   public static final String CONFIGURATION_TABLE = "configuration";
+  /** attempts of {@link #updateSamlConfiguration} */
+  static final int MAX_UPDATE_ATTEMPTS = 3;
+
+  /** key: tenantId */
+  private static final ConcurrentMap<String, CachedConfigurations> cache = new ConcurrentHashMap<>();
+
+  /**
+   * The configuration records of a tenant and their version, never handed out.
+   */
+  private static class CachedConfigurations {
+    /** id:xmin of all rows ordered by id, null if there is none */
+    private final String version;
+    private final List<SamlConfiguration> configurations;
+
+    CachedConfigurations(String version, List<SamlConfiguration> configurations) {
+      this.version = version;
+      this.configurations = configurations;
+    }
+
+    List<SamlConfiguration> copies() {
+      List<SamlConfiguration> copies = new ArrayList<>(configurations.size());
+      for (SamlConfiguration configuration : configurations) {
+        SamlConfiguration copy = JsonObject.mapFrom(configuration).mapTo(SamlConfiguration.class);
+        copy.setVersion(configuration.getVersion());
+        copies.add(copy);
+      }
+      return copies;
+    }
+  }
 
   private Future<SamlConfiguration> getConfigurationMigration(Vertx vertx, OkapiHeaders okapiHeaders, boolean withDelete) {
 
     Objects.requireNonNull(okapiHeaders);
     ConfigurationsDao.verifyOkapiHeaders(okapiHeaders);
     return PostgresClient.getInstance(vertx, okapiHeaders.getTenant())
-      .get(CONFIGURATION_TABLE, SamlConfiguration.class, new Criterion(), true)
+      .get(CONFIGURATION_TABLE, SamlConfiguration.class, new Criterion(), false)
       .compose(results -> localFutureGetConfigurationMigration(results, vertx, okapiHeaders, withDelete));
   }
 
@@ -118,21 +159,101 @@ public class ConfigurationsDaoImpl implements ConfigurationsDao {
       .onFailure(cause -> LOGGER.error("{}", cause.getMessage()));
   }
 
+  /**
+   * Get the configuration of the tenant.
+   *
+   * <p>The configuration is cached per tenant together with the versions of the rows (id and xmin).
+   * A lookup only queries the versions; the rows are read if they have changed. The caller gets a copy
+   * it may modify.
+   */
   @Override
   public Future<SamlConfiguration> getConfiguration(Vertx vertx, OkapiHeaders okapiHeaders, boolean isPut) {
 
     Objects.requireNonNull(okapiHeaders);
     ConfigurationsDao.verifyOkapiHeaders(okapiHeaders);
-    return PostgresClient.getInstance(vertx, okapiHeaders.getTenant())
-      .get(CONFIGURATION_TABLE, SamlConfiguration.class, new Criterion(), true)
-      .compose(results -> localFutureGetConfiguration(results, isPut));
+    return getConfiguration(vertx, okapiHeaders.getTenant(), isPut);
   }
 
-  private Future<SamlConfiguration> localFutureGetConfiguration(Results<SamlConfiguration> results, boolean isPut) {
+  /**
+   * The configuration of the tenant for module internal use without Okapi request, for example warm-up.
+   */
+  public Future<SamlConfiguration> getConfiguration(Vertx vertx, String tenantId) {
+    return getConfiguration(vertx, tenantId, false);
+  }
 
-    int localLength = results.getResults().size();
+  private Future<SamlConfiguration> getConfiguration(Vertx vertx, String tenantId, boolean isPut) {
+    PostgresClient postgresClient = PostgresClient.getInstance(vertx, tenantId);
+    CachedConfigurations cached = cache.get(tenantId);
+    if (cached == null) {
+      return loadConfigurations(postgresClient, tenantId)
+        .compose(loaded -> localFutureGetConfiguration(loaded.copies(), isPut));
+    }
+    return postgresClient.selectSingle("SELECT string_agg(id::text || ':' || xmin::text, ',' ORDER BY id) FROM "
+        + table(tenantId))
+      .compose(row -> {
+        if (Objects.equals(row.getString(0), cached.version)) {
+          return Future.succeededFuture(cached);
+        }
+        return loadConfigurations(postgresClient, tenantId);
+      })
+      .compose(current -> localFutureGetConfiguration(current.copies(), isPut));
+  }
+
+  private static Future<CachedConfigurations> loadConfigurations(PostgresClient postgresClient, String tenantId) {
+    return postgresClient.select("SELECT id, jsonb, xmin::text AS version FROM " + table(tenantId) + " ORDER BY id")
+      .map(rows -> {
+        List<SamlConfiguration> configurations = new ArrayList<>();
+        StringJoiner version = new StringJoiner(",");
+        for (Row row : rows) {
+          configurations.add(toSamlConfiguration(row));
+          version.add(row.getUUID("id") + ":" + row.getString("version"));
+        }
+        // string_agg of no rows is NULL
+        CachedConfigurations loaded =
+            new CachedConfigurations(configurations.isEmpty() ? null : version.toString(), configurations);
+        cache.put(tenantId, loaded);
+        return loaded;
+      });
+  }
+
+  /**
+   * @return the tenants that have the configuration table of this module
+   */
+  public static Future<List<String>> getTenants(Vertx vertx) {
+    // convertToPsqlStandard(tenant) is the tenant followed by this suffix
+    String suffix = PostgresClient.convertToPsqlStandard("");
+    return PostgresClient.getInstance(vertx)
+      .execute("SELECT nspname FROM pg_namespace WHERE right(nspname, length($1)) = $1"
+          + " AND to_regclass(quote_ident(nspname) || '." + CONFIGURATION_TABLE + "') IS NOT NULL"
+          + " ORDER BY nspname", Tuple.of(suffix))
+      .map(rows -> {
+        List<String> tenants = new ArrayList<>();
+        for (Row row : rows) {
+          String schema = row.getString(0);
+          tenants.add(schema.substring(0, schema.length() - suffix.length()));
+        }
+        return tenants;
+      });
+  }
+
+  private static String table(String tenantId) {
+    return PostgresClient.convertToPsqlStandard(tenantId) + "." + CONFIGURATION_TABLE;
+  }
+
+  /**
+   * Drop the cached configuration of the tenant.
+   */
+  public static void invalidate(String tenantId) {
+    if (tenantId != null) {
+      cache.remove(tenantId);
+    }
+  }
+
+  private Future<SamlConfiguration> localFutureGetConfiguration(List<SamlConfiguration> results, boolean isPut) {
+
+    int localLength = results.size();
     if(localLength == 1) {
-      return Future.succeededFuture(results.getResults().get(0));
+      return Future.succeededFuture(results.get(0));
     }
     if(localLength > 1) {
       String errorMessage = String.format("Number of records are not unique. The number is : %s", Integer.toString(localLength));
@@ -156,6 +277,29 @@ public class ConfigurationsDaoImpl implements ConfigurationsDao {
     return storeEntry(vertx, okapiHeaders, samlConfiguration);
   }
 
+  @Override
+  public Future<SamlConfiguration> updateSamlConfiguration(Vertx vertx, OkapiHeaders okapiHeaders,
+      UnaryOperator<SamlConfiguration> update) {
+
+    Objects.requireNonNull(okapiHeaders);
+    ConfigurationsDao.verifyOkapiHeaders(okapiHeaders);
+    return localUpdateSamlConfiguration(vertx, okapiHeaders, update, MAX_UPDATE_ATTEMPTS);
+  }
+
+  private Future<SamlConfiguration> localUpdateSamlConfiguration(Vertx vertx, OkapiHeaders okapiHeaders,
+      UnaryOperator<SamlConfiguration> update, int attempts) {
+
+    return getConfiguration(vertx, okapiHeaders, true)
+      .compose(configuration -> storeEntry(vertx, okapiHeaders, update.apply(configuration)))
+      .recover(e -> {
+        if (!(e instanceof ConfigurationConflictException) || attempts <= 1) {
+          return Future.failedFuture(e);
+        }
+        LOGGER.info("Configuration of tenant {} modified concurrently, retrying", okapiHeaders.getTenant());
+        return localUpdateSamlConfiguration(vertx, okapiHeaders, update, attempts - 1);
+      });
+  }
+
   private Future<SamlConfiguration> localStoreSamlConfiguration(Vertx vertx, OkapiHeaders okapiHeaders, SamlConfiguration samlConfiguration) {
 
     Objects.requireNonNull(okapiHeaders);
@@ -164,19 +308,105 @@ public class ConfigurationsDaoImpl implements ConfigurationsDao {
     return storeSamlConfiguration(vertx, okapiHeaders, samlConfiguration);
   }
 
+  /**
+   * Update the entries of the configuration, create the configuration if there is none.
+   *
+   * <p>The entries are merged into the stored record by a single {@code jsonb ||} UPDATE, so concurrent
+   * updates of different entries, like a regenerated keystore and a PUT, do not overwrite each other.
+   * If there is no record a new one is inserted unless another one has been inserted meanwhile;
+   * the update is then tried again.
+   */
   @Override
   public Future<SamlConfiguration> storeEntry(Vertx vertx, OkapiHeaders okapiHeaders, Map<String, String> map2Update) {
     Objects.requireNonNull(okapiHeaders);
+    ConfigurationsDao.verifyOkapiHeaders(okapiHeaders);
 
-    return getConfiguration(vertx, okapiHeaders, true)
-      .compose(result -> storeEntry(vertx, okapiHeaders, localUpdateSamlConfiguration(result, map2Update)));
+    JsonObject patch;
+    try {
+      patch = localPatch(map2Update);
+    } catch (IllegalArgumentException e) {
+      return Future.failedFuture(e);
+    }
+    String tenantId = okapiHeaders.getTenant();
+    PostgresClient postgresClient = PostgresClient.getInstance(vertx, tenantId);
+    return localUpdateEntry(postgresClient, tenantId, patch)
+      .compose(updated -> updated != null ? Future.succeededFuture(updated)
+          : localInsertEntry(postgresClient, tenantId, patch))
+      .compose(stored -> stored != null ? Future.succeededFuture(stored)
+          : localUpdateEntry(postgresClient, tenantId, patch))
+      // none updated, none inserted: there is more than one record
+      .compose(stored -> stored != null ? Future.succeededFuture(stored)
+          : getConfiguration(vertx, okapiHeaders, true)
+            .compose(x -> Future.<SamlConfiguration>failedFuture(
+                new ConfigurationConflictException("Concurrent modification of the configuration"))))
+      .onComplete(x -> invalidate(tenantId))
+      .onFailure(e -> LOGGER.error("Configuration Storage failed: {}", e.getMessage()));
   }
 
-  private static SamlConfiguration localUpdateSamlConfiguration(SamlConfiguration result, Map<String, String> map2Update) {
+  private static JsonObject localPatch(Map<String, String> map2Update) {
+    JsonObject patch = new JsonObject();
+    SamlConfiguration validation = new SamlConfiguration();
     for (Map.Entry<String, String> entry : map2Update.entrySet()) {
-      localUpdateSamlConfiguration(result, entry.getKey(), entry.getValue());
+      // throws for codes that are not allowed
+      localUpdateSamlConfiguration(validation, entry.getKey(), entry.getValue());
+      patch.put(entry.getKey(), entry.getValue());
     }
-    return result;
+    return patch;
+  }
+
+  /**
+   * @return the updated configuration, null if there is not exactly one record
+   */
+  private static Future<SamlConfiguration> localUpdateEntry(PostgresClient postgresClient, String tenantId,
+      JsonObject patch) {
+
+    String table = table(tenantId);
+    return postgresClient.execute("UPDATE " + table + " SET jsonb = jsonb || $1"
+        + " WHERE (SELECT count(*) FROM " + table + ") = 1 RETURNING id, jsonb, xmin::text AS version",
+        Tuple.of(patch))
+      .map(ConfigurationsDaoImpl::localFirst);
+  }
+
+  /**
+   * @return the inserted configuration, null if there already is a record
+   */
+  private static Future<SamlConfiguration> localInsertEntry(PostgresClient postgresClient, String tenantId,
+      JsonObject patch) {
+
+    String table = table(tenantId);
+    UUID id = UUID.randomUUID();
+    return postgresClient.execute("INSERT INTO " + table + " (id, jsonb) SELECT $1, $2"
+        + " WHERE NOT EXISTS (SELECT 1 FROM " + table + ") RETURNING id, jsonb, xmin::text AS version",
+        Tuple.of(id, JsonObject.mapFrom(new SamlConfiguration()).mergeIn(patch)
+            .put(SamlConfiguration.ID_CODE, id.toString())))
+      .map(ConfigurationsDaoImpl::localFirst);
+  }
+
+  /**
+   * Replace the record the configuration has been read from if the record has not changed since.
+   *
+   * @return the stored configuration, null if the record has been modified or deleted meanwhile
+   */
+  private static Future<SamlConfiguration> localReplaceEntry(PostgresClient postgresClient, String tenantId,
+      SamlConfiguration samlConfiguration) {
+
+    return postgresClient.execute("UPDATE " + table(tenantId) + " SET jsonb = $1"
+        + " WHERE id = $2 AND xmin::text = $3 RETURNING id, jsonb, xmin::text AS version",
+        Tuple.of(JsonObject.mapFrom(samlConfiguration), UUID.fromString(samlConfiguration.getId()),
+            samlConfiguration.getVersion()))
+      .map(ConfigurationsDaoImpl::localFirst);
+  }
+
+  private static SamlConfiguration localFirst(RowSet<Row> rows) {
+    RowIterator<Row> iterator = rows.iterator();
+    return iterator.hasNext() ? toSamlConfiguration(iterator.next()) : null;
+  }
+
+  private static SamlConfiguration toSamlConfiguration(Row row) {
+    SamlConfiguration configuration = row.getJsonObject("jsonb").mapTo(SamlConfiguration.class);
+    configuration.setId(row.getUUID("id").toString());
+    configuration.setVersion(row.getString("version"));
+    return configuration;
   }
 
   private static void localUpdateSamlConfiguration(SamlConfiguration result, String code, String value) {
@@ -186,6 +416,8 @@ public class ConfigurationsDaoImpl implements ConfigurationsDao {
           break;
         case SamlConfiguration.IDP_URL_CODE: result.setIdpUrl(value);
           break;
+        case SamlConfiguration.IDP_ENTITY_ID_CODE: result.setIdpEntityId(value);
+          break;
         case SamlConfiguration.KEYSTORE_FILE_CODE: result.setKeystore(value);
           break;
         case SamlConfiguration.KEYSTORE_PASSWORD_CODE: result.setKeystorePassword(value);
@@ -211,14 +443,34 @@ public class ConfigurationsDaoImpl implements ConfigurationsDao {
     }
   }
 
+  /**
+   * Store the configuration. A configuration read from the database replaces its record only if the
+   * record has not been modified meanwhile (optimistic concurrency by xmin). A configuration without id
+   * is inserted only if there is no record.
+   *
+   * @return failed with {@link ConfigurationConflictException} on a concurrent modification
+   */
   Future<SamlConfiguration> storeEntry(Vertx vertx, OkapiHeaders okapiHeaders, SamlConfiguration samlConfiguration) {
 
     Objects.requireNonNull(okapiHeaders);
     Objects.requireNonNull(samlConfiguration);
 
-    return PostgresClient.getInstance(vertx, okapiHeaders.getTenant())
-      .upsert(CONFIGURATION_TABLE, samlConfiguration.getId(), samlConfiguration, true)
-      .map(result -> localStoreEntry(result, samlConfiguration))
+    String tenantId = okapiHeaders.getTenant();
+    PostgresClient postgresClient = PostgresClient.getInstance(vertx, tenantId);
+    Future<SamlConfiguration> stored;
+    if (samlConfiguration.getVersion() != null && samlConfiguration.getId() != null) {
+      stored = localReplaceEntry(postgresClient, tenantId, samlConfiguration);
+    } else if (samlConfiguration.getId() == null) {
+      stored = localInsertEntry(postgresClient, tenantId, JsonObject.mapFrom(samlConfiguration));
+    } else {
+      stored = postgresClient.upsert(CONFIGURATION_TABLE, samlConfiguration.getId(), samlConfiguration, true)
+        .map(result -> localStoreEntry(result, samlConfiguration));
+    }
+    return stored
+      .compose(result -> result != null ? Future.succeededFuture(result)
+          : Future.<SamlConfiguration>failedFuture(
+              new ConfigurationConflictException("Concurrent modification of the configuration")))
+      .onComplete(x -> invalidate(tenantId))
       .onFailure(e -> LOGGER.error("Configuration Storage failed: {}", e.getMessage()));
   }
 
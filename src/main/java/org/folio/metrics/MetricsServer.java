@@ -0,0 +1,54 @@
+package org.folio.metrics;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * HTTP server for the Prometheus scrape of {@link SamlMetrics} at /metrics.
+ *
+ * <p>Runs on its own port, not on the module port, so that the metrics are not exposed via Okapi.
+ */
+public class MetricsServer {
+
+  public static final String PATH = "/metrics";
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final Logger log = LogManager.getLogger(MetricsServer.class);
+
+  private MetricsServer() {
+  }
+
+  /**
+   * Start the server if port is set.
+   *
+   * @param port value of the METRICS_PORT environment variable, null to not start the server
+   * @return the started server, or null if port is null
+   */
+  public static Future<HttpServer> start(Vertx vertx, String port) {
+    if (port == null) {
+      return Future.succeededFuture();
+    }
+    int portNumber;
+    try {
+      portNumber = Integer.parseInt(port);
+    } catch (NumberFormatException e) {
+      return Future.failedFuture(new NumberFormatException("Bad value of environmental variable "
+          + "METRICS_PORT: \"" + port + "\""));
+    }
+    return vertx.createHttpServer()
+      .requestHandler(request -> {
+        if (!PATH.equals(request.path())) {
+          request.response().setStatusCode(404).end();
+          return;
+        }
+        request.response()
+          .putHeader("Content-Type", CONTENT_TYPE)
+          .end(SamlMetrics.scrape());
+      })
+      .listen(portNumber)
+      .onSuccess(server -> log.info("Metrics available at port {} path {}", server.actualPort(), PATH));
+  }
+}
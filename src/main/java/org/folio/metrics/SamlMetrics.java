@@ -0,0 +1,309 @@
+package org.folio.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import javax.ws.rs.core.Response;
+import org.folio.config.ClientEvictionPolicy;
+import org.folio.config.ClientLoadBreaker;
+import org.folio.config.KeystoreCredentialCache;
+import org.folio.config.KeystoreGenerator;
+import org.folio.config.SamlCheckCache;
+import org.folio.config.SamlConfigHolder;
+import org.folio.service.UserLookupCache;
+
+/**
+ * Micrometer metrics of the SAML endpoints and of the phases of login and callback.
+ *
+ * <p>Meters:
+ * <ul>
+ *   <li>saml.requests: timer per endpoint, tenant and HTTP status</li>
+ *   <li>saml.phase: timer per {@link Phase}, tenant and outcome (success, failure)</li>
+ *   <li>saml.errors: counter per phase or endpoint, tenant and exception type</li>
+ *   <li>saml.client.cache: lookups of {@link SamlConfigHolder} by result (hit, miss, coalesced, load_failure)</li>
+ *   <li>saml.client.cache.eviction: clients evicted from {@link SamlConfigHolder} by reason (size, idle)</li>
+ *   <li>saml.client.cache.entries, saml.client.cache.size: number and estimated size of the held clients</li>
+ *   <li>saml.client.size: estimated size of the client by tenant</li>
+ *   <li>saml.user.cache: lookups of {@link UserLookupCache} by result (hit, miss)</li>
+ *   <li>saml.check.cache: checks of tenants without client by {@link SamlCheckCache} result (hit, miss)</li>
+ *   <li>saml.keystore.cache: lookups of {@link KeystoreCredentialCache} by result (hit, miss)</li>
+ *   <li>saml.keypair.pool: keystores generated by {@link KeystoreGenerator} by result (hit, miss)</li>
+ *   <li>saml.client.eviction: client evictions requested by failed callbacks by tenant and result
+ *       (evicted, rate_limited, kept)</li>
+ *   <li>saml.client.breaker: events of the {@link ClientLoadBreaker} by tenant (opened, rejected, probe,
+ *       closed)</li>
+ *   <li>saml.users.speculation: speculative /users lookups by tenant and result (used, wasted)</li>
+ * </ul>
+ */
+public final class SamlMetrics {
+
+  public enum Phase {
+    CLIENT_LOOKUP("client_lookup"),
+    CLIENT_INIT("client_init"),
+    IDP_METADATA_FETCH("idp_metadata_fetch"),
+    AUTHN_REQUEST("authn_request"),
+    RESPONSE_VALIDATION("response_validation"),
+    USER_TENANTS("user_tenants"),
+    USERS("users"),
+    TOKEN_SIGN("token_sign"),
+    COOKIE_REDIRECT("cookie_redirect");
+
+    private final String tagValue;
+
+    Phase(String tagValue) {
+      this.tagValue = tagValue;
+    }
+
+    public String getTagValue() {
+      return tagValue;
+    }
+  }
+
+  static final String UNKNOWN_TENANT = "unknown";
+
+  private static final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+
+  static {
+    new JvmMemoryMetrics().bindTo(registry);
+    new JvmThreadMetrics().bindTo(registry);
+    new ProcessorMetrics().bindTo(registry);
+    SamlConfigHolder holder = SamlConfigHolder.getInstance();
+    cacheCounter("hit", holder, SamlConfigHolder::getHits);
+    cacheCounter("miss", holder, SamlConfigHolder::getMisses);
+    cacheCounter("coalesced", holder, SamlConfigHolder::getCoalesced);
+    cacheCounter("load_failure", holder, SamlConfigHolder::getLoadFailures);
+    FunctionCounter.builder("saml.client.cache.eviction", holder, SamlConfigHolder::getSizeEvictions)
+      .description("Clients evicted from SamlConfigHolder")
+      .tag("reason", "size")
+      .register(registry);
+    FunctionCounter.builder("saml.client.cache.eviction", holder, SamlConfigHolder::getIdleEvictions)
+      .description("Clients evicted from SamlConfigHolder")
+      .tag("reason", "idle")
+      .register(registry);
+    Gauge.builder("saml.client.cache.entries", holder, h -> h.getConfig().size())
+      .description("Clients held by SamlConfigHolder")
+      .register(registry);
+    Gauge.builder("saml.client.cache.size", holder, SamlConfigHolder::getEstimatedSize)
+      .description("Estimated size of the clients held by SamlConfigHolder")
+      .baseUnit("bytes")
+      .register(registry);
+    UserLookupCache userCache = UserLookupCache.getInstance();
+    FunctionCounter.builder("saml.user.cache", userCache, UserLookupCache::getHits)
+      .description("User lookups of UserLookupCache")
+      .tag("result", "hit")
+      .register(registry);
+    FunctionCounter.builder("saml.user.cache", userCache, UserLookupCache::getMisses)
+      .description("User lookups of UserLookupCache")
+      .tag("result", "miss")
+      .register(registry);
+    SamlCheckCache checkCache = SamlCheckCache.getInstance();
+    FunctionCounter.builder("saml.check.cache", checkCache, SamlCheckCache::getHits)
+      .description("Checks of tenants without client answered by SamlCheckCache")
+      .tag("result", "hit")
+      .register(registry);
+    FunctionCounter.builder("saml.check.cache", checkCache, SamlCheckCache::getMisses)
+      .description("Checks of tenants without client answered by SamlCheckCache")
+      .tag("result", "miss")
+      .register(registry);
+    KeystoreCredentialCache keystoreCache = KeystoreCredentialCache.getInstance();
+    FunctionCounter.builder("saml.keystore.cache", keystoreCache, KeystoreCredentialCache::getHits)
+      .description("Keystore lookups of KeystoreCredentialCache")
+      .tag("result", "hit")
+      .register(registry);
+    FunctionCounter.builder("saml.keystore.cache", keystoreCache, KeystoreCredentialCache::getMisses)
+      .description("Keystore lookups of KeystoreCredentialCache")
+      .tag("result", "miss")
+      .register(registry);
+    KeystoreGenerator keystoreGenerator = KeystoreGenerator.getInstance();
+    FunctionCounter.builder("saml.keypair.pool", keystoreGenerator, KeystoreGenerator::getHits)
+      .description("Keystores generated by KeystoreGenerator with a pooled key pair")
+      .tag("result", "hit")
+      .register(registry);
+    FunctionCounter.builder("saml.keypair.pool", keystoreGenerator, KeystoreGenerator::getMisses)
+      .description("Keystores generated by KeystoreGenerator with a pooled key pair")
+      .tag("result", "miss")
+      .register(registry);
+  }
+
+  private SamlMetrics() {
+  }
+
+  private static void cacheCounter(String result, SamlConfigHolder holder,
+    ToLongFunction<SamlConfigHolder> count) {
+
+    FunctionCounter.builder("saml.client.cache", holder, h -> count.applyAsLong(h))
+      .description("Client lookups of SamlConfigHolder")
+      .tag("result", result)
+      .register(registry);
+  }
+
+  public static MeterRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * @return all meters in the Prometheus text format
+   */
+  public static String scrape() {
+    return registry.scrape();
+  }
+
+  /**
+   * Time an asynchronous phase.
+   */
+  public static <T> Future<T> time(Phase phase, String tenant, Supplier<Future<T>> action) {
+    Timer.Sample sample = Timer.start(registry);
+    Future<T> future;
+    try {
+      future = action.get();
+    } catch (RuntimeException e) {
+      stop(sample, phase, tenant, e);
+      throw e;
+    }
+    return future.onComplete(result -> stop(sample, phase, tenant, result.cause()));
+  }
+
+  /**
+   * Time a synchronous phase.
+   */
+  public static <T> T timeSync(Phase phase, String tenant, Supplier<T> action) {
+    Timer.Sample sample = Timer.start(registry);
+    try {
+      T result = action.get();
+      stop(sample, phase, tenant, null);
+      return result;
+    } catch (RuntimeException e) {
+      stop(sample, phase, tenant, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Wrap the RMB response handler of an endpoint to time the request by HTTP status.
+   */
+  public static Handler<AsyncResult<Response>> timeRequest(String endpoint, String tenant,
+    Handler<AsyncResult<Response>> asyncResultHandler) {
+
+    Timer.Sample sample = Timer.start(registry);
+    return result -> {
+      String status = result.succeeded() ? Integer.toString(result.result().getStatus()) : "500";
+      sample.stop(Timer.builder("saml.requests")
+        .description("SAML endpoint requests")
+        .tag("endpoint", endpoint)
+        .tag("tenant", tenant(tenant))
+        .tag("status", status)
+        .register(registry));
+      if (result.failed()) {
+        recordError(endpoint, tenant, result.cause());
+      }
+      asyncResultHandler.handle(result);
+    };
+  }
+
+  /**
+   * Count an error by the type of the exception.
+   *
+   * @param where phase or endpoint
+   */
+  public static void recordError(String where, String tenant, Throwable cause) {
+    Counter.builder("saml.errors")
+      .description("Errors by phase or endpoint and exception type")
+      .tag("where", where)
+      .tag("tenant", tenant(tenant))
+      .tag("exception", exceptionName(cause))
+      .register(registry)
+      .increment();
+  }
+
+  /**
+   * Count a speculative /users lookup.
+   *
+   * @param used true if its result was used, false if it was discarded
+   */
+  public static void recordSpeculation(String tenant, boolean used) {
+    Counter.builder("saml.users.speculation")
+      .description("Speculative /users lookups issued in parallel to /user-tenants")
+      .tag("tenant", tenant(tenant))
+      .tag("result", used ? "used" : "wasted")
+      .register(registry)
+      .increment();
+  }
+
+  /**
+   * Register the gauge of the estimated size of the tenant's client, once per tenant.
+   */
+  public static void registerClientSize(String tenant) {
+    Gauge.builder("saml.client.size", SamlConfigHolder.getInstance(), h -> h.getEstimatedSize(tenant))
+      .description("Estimated size of the client of the tenant, 0 if not loaded")
+      .tag("tenant", tenant(tenant))
+      .baseUnit("bytes")
+      .register(registry);
+  }
+
+  /**
+   * Remove the gauge of the estimated size of the tenant's client.
+   */
+  public static void removeClientSize(String tenant) {
+    Gauge gauge = registry.find("saml.client.size").tag("tenant", tenant(tenant)).gauge();
+    if (gauge != null) {
+      registry.remove(gauge);
+    }
+  }
+
+  /**
+   * Count a decision on the eviction of a client after a failed callback.
+   */
+  public static void recordEviction(String tenant, ClientEvictionPolicy.Decision decision) {
+    Counter.builder("saml.client.eviction")
+      .description("Client evictions requested by failed callbacks")
+      .tag("tenant", tenant(tenant))
+      .tag("result", decision.getTagValue())
+      .register(registry)
+      .increment();
+  }
+
+  /**
+   * Count an event of the client load circuit breaker.
+   */
+  public static void recordBreaker(String tenant, ClientLoadBreaker.Event event) {
+    Counter.builder("saml.client.breaker")
+      .description("Events of the per-tenant circuit breaker of client loads")
+      .tag("tenant", tenant(tenant))
+      .tag("event", event.getTagValue())
+      .register(registry)
+      .increment();
+  }
+
+  private static void stop(Timer.Sample sample, Phase phase, String tenant, Throwable cause) {
+    sample.stop(Timer.builder("saml.phase")
+      .description("Phases of SAML login and callback")
+      .tag("phase", phase.getTagValue())
+      .tag("tenant", tenant(tenant))
+      .tag("outcome", cause == null ? "success" : "failure")
+      .register(registry));
+    if (cause != null) {
+      recordError(phase.getTagValue(), tenant, cause);
+    }
+  }
+
+  private static String exceptionName(Throwable cause) {
+    String name = cause.getClass().getSimpleName();
+    return name.isEmpty() ? cause.getClass().getName() : name;
+  }
+
+  private static String tenant(String tenant) {
+    return tenant == null ? UNKNOWN_TENANT : tenant;
+  }
+}
@@ -3,9 +3,21 @@ package org.folio.rest.impl;
 import io.vertx.core.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.config.AuthnRequestTemplate;
+import org.folio.config.ClientEvictionPolicy;
+import org.folio.config.ClientLoadBreaker;
+import org.folio.config.ClientWarmUp;
+import org.folio.config.ConfigurationChangeListener;
+import org.folio.config.IdpMetadataRefresher;
+import org.folio.config.KeystoreGenerator;
+import org.folio.config.SamlCheckCache;
 import org.folio.config.SamlClientLoader;
+import org.folio.config.SamlConfigHolder;
+import org.folio.metrics.MetricsServer;
 import org.folio.rest.RestVerticle;
 import org.folio.rest.resource.interfaces.InitAPI;
+import org.folio.service.UserLookupCache;
+import org.folio.service.UserService;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -35,8 +47,33 @@ public class ApiInitializer implements InitAPI {
     RestVerticle.getHttpServerOptions().setMaxFormAttributeSize(MAX_FORM_ATTRIBUTE_SIZE);
 
     SamlClientLoader.setMaximumAuthenticationLifetime(System.getenv("MAX_AUTH_LIFETIME"));
-
-    handler.handle(Future.succeededFuture(true));
+    IdpMetadataRefresher.setRefreshInterval(System.getenv("IDP_METADATA_REFRESH_INTERVAL"));
+    UserService.setSpeculativeUserLookup(System.getenv("USER_LOOKUP_SPECULATIVE"));
+    UserLookupCache.getInstance().setSize(System.getenv("USER_CACHE_SIZE"));
+    UserLookupCache.getInstance().setTtl(System.getenv("USER_CACHE_TTL"));
+    AuthnRequestTemplate.setEnabled(System.getenv("AUTHN_REQUEST_TEMPLATE"));
+    ClientEvictionPolicy.getInstance().setInterval(System.getenv("CLIENT_EVICTION_INTERVAL"));
+    ClientLoadBreaker.getInstance().setThreshold(System.getenv("CLIENT_LOAD_FAILURE_THRESHOLD"));
+    ClientLoadBreaker.getInstance().setRetryInterval(System.getenv("CLIENT_LOAD_RETRY_INTERVAL"));
+    SamlCheckCache.getInstance().setNegativeTtl(System.getenv("SAML_CHECK_NEGATIVE_TTL"));
+    SamlConfigHolder.getInstance().setMaxEntries(System.getenv("CLIENT_CACHE_MAX_ENTRIES"));
+    SamlConfigHolder.getInstance().setMaxBytes(System.getenv("CLIENT_CACHE_MAX_BYTES"));
+    SamlConfigHolder.getInstance().setIdleTtl(System.getenv("CLIENT_CACHE_IDLE_TTL"));
+    KeystoreGenerator.getInstance().setPoolSize(System.getenv("KEYPAIR_POOL_SIZE"));
+    KeystoreGenerator.getInstance().fill(vertx);
+    ClientWarmUp.setConcurrency(System.getenv("CLIENT_WARMUP_CONCURRENCY"));
+    ClientWarmUp.setReadiness(System.getenv("CLIENT_WARMUP_READINESS"));
+
+    // not fatal: without it other instances pick up configuration changes on client failures only
+    ConfigurationChangeListener.start(vertx);
+
+    // RMB starts listening after init has completed
+    Future<Void> warmUp = ClientWarmUp.start(context);
+    // metrics are served on a separate port, not via Okapi
+    MetricsServer.start(vertx, System.getenv("METRICS_PORT"))
+      .compose(x -> ClientWarmUp.isReadiness() ? warmUp : Future.succeededFuture())
+      .map(true)
+      .onComplete(handler);
   }
 
   /**
@@ -11,6 +11,7 @@ import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Supplier;
 
 import javax.ws.rs.core.NewCookie;
 import javax.ws.rs.core.Response;
@@ -27,22 +28,27 @@ import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.auth.PRNG;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.Session;
 import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.WebClient;
 import io.vertx.ext.web.impl.Utils;
-import io.vertx.ext.web.sstore.impl.SharedDataSessionImpl;
 import org.apache.commons.io.IOUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.config.ClientEvictionPolicy;
+import org.folio.config.ClientLoadBreaker;
+import org.folio.config.SamlCheckCache;
 import org.folio.config.SamlClientLoader;
 import org.folio.config.SamlConfigHolder;
+import org.folio.config.SamlLoginAction;
 import org.folio.config.model.SamlClientComposite;
 import org.folio.config.model.SamlConfiguration;
+import org.folio.config.model.SpMetadata;
 import org.folio.dao.ConfigurationsDao;
 import org.folio.dao.impl.ConfigurationsDaoImpl;
+import org.folio.metrics.SamlMetrics;
+import org.folio.metrics.SamlMetrics.Phase;
 import org.folio.okapi.common.XOkapiHeaders;
 import org.folio.rest.jaxrs.model.SamlCheck;
 import org.folio.rest.jaxrs.model.SamlConfig;
@@ -53,8 +59,10 @@ import org.folio.rest.jaxrs.model.SamlRegenerateResponse;
 import org.folio.rest.jaxrs.model.SamlValidateGetType;
 import org.folio.rest.jaxrs.model.SamlValidateResponse;
 import org.folio.rest.jaxrs.resource.Saml;
+import org.folio.service.UserLookupCache;
 import org.folio.service.UserService;
 import org.folio.session.NoopSession;
+import org.folio.session.RelayStateSession;
 import org.folio.util.Base64Util;
 import org.folio.util.ConfigEntryUtil;
 import org.folio.util.DumpUtil;
@@ -87,6 +95,9 @@ public class SamlAPI implements Saml {
   private static final String TOKEN_SIGN_ENDPOINT = "/token/sign";
   public static final String SET_COOKIE = "Set-Cookie";
   public static final String LOCATION = "Location";
+  private static final String ETAG_HEADER = "ETag";
+  private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+  private static final String CONTENT_TYPE_HEADER = "Content-Type";
   public static final String REFRESH_TOKEN = "refreshToken";
   public static final String ACCESS_TOKEN = "accessToken";
   public static final String FOLIO_ACCESS_TOKEN = "folioAccessToken";
@@ -121,32 +132,61 @@ public class SamlAPI implements Saml {
   public void getSamlCheck(RoutingContext routingContext, Map<String, String> okapiHeaders,
     Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
 
+    String tenantId = okapiHeaders.get(XOkapiHeaders.TENANT);
+    var handler = SamlMetrics.timeRequest("check", tenantId, asyncResultHandler);
+    SamlCheckCache checkCache = SamlCheckCache.getInstance();
+    if (SamlConfigHolder.getInstance().findClient(tenantId) == null && checkCache.isInactive(tenantId)) {
+      handler.handle(Future.succeededFuture(
+          GetSamlCheckResponse.respond200WithApplicationJson(new SamlCheck().withActive(false))));
+      return;
+    }
     findSaml2Client(routingContext, false, false, vertxContext)
-      .onComplete(samlClientHandler ->
-        asyncResultHandler.handle(Future.succeededFuture(
+      .onComplete(samlClientHandler -> {
+        checkCache.put(tenantId, samlClientHandler.succeeded());
+        handler.handle(Future.succeededFuture(
           GetSamlCheckResponse.respond200WithApplicationJson(new SamlCheck().withActive(samlClientHandler.succeeded()))
-        )));
+        ));
+      });
   }
 
   @Override
   public void postSamlLogin(SamlLoginRequest requestEntity, RoutingContext routingContext,
     Map<String, String> okapiHeaders, Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
 
+    String tenantId = okapiHeaders.get(XOkapiHeaders.TENANT);
+    var handler = SamlMetrics.timeRequest("login", tenantId, asyncResultHandler);
     postSamlLogin(requestEntity, routingContext, vertxContext, false)
       .otherwise(e -> PostSamlLoginResponse.respond500WithTextPlain("Fail and retry"))
       .compose(response -> {
         if (response.getStatus() == 200) {
           return Future.succeededFuture(response);
         }
-          // retry after reloading client
+        long retryAfter = ClientLoadBreaker.getInstance().getRetryAfter(tenantId);
+        if (retryAfter > 0) {
+          return Future.succeededFuture(clientUnavailable(tenantId, retryAfter));
+        }
+        // retry after reloading client
         removeSaml2Client(routingContext);
         return postSamlLogin(requestEntity, routingContext, vertxContext, true);
       })
       .otherwise(e -> {
-          log.error(e.getMessage(), e);
-          return PostSamlLoginResponse.respond500WithTextPlain("Internal Server Error");
+        if (e instanceof ClientLoadBreaker.OpenException openException) {
+          return clientUnavailable(tenantId, openException.getRetryAfter());
+        }
+        log.error(e.getMessage(), e);
+        SamlMetrics.recordError("login", tenantId, e);
+        return PostSamlLoginResponse.respond500WithTextPlain("Internal Server Error");
       })
-      .onSuccess(response -> asyncResultHandler.handle(Future.succeededFuture(response)));
+      .onSuccess(response -> handler.handle(Future.succeededFuture(response)));
+  }
+
+  /**
+   * The login of the tenant fails fast because the {@link ClientLoadBreaker} of the tenant is open.
+   */
+  private static Response clientUnavailable(String tenantId, long retryAfter) {
+    return PostSamlLoginResponse.respond503WithTextPlain(
+        "Loading the SAML client of tenant " + tenantId + " failed repeatedly, retry after " + retryAfter + " seconds",
+        PostSamlLoginResponse.headersFor503().withRetryAfter(Long.toString(retryAfter)));
   }
 
   private Future<Response> postSamlLogin(SamlLoginRequest requestEntity, RoutingContext routingContext,
@@ -159,7 +199,7 @@ public class SamlAPI implements Saml {
     routingContext.addCookie(relayStateCookie);
 
     // register non-persistent session (this request only) to overWrite relayState
-    Session session = new SharedDataSessionImpl(new PRNG(vertxContext.owner()));
+    Session session = new RelayStateSession(vertxContext.owner());
     // csrfToken without url because RelayState data MUST NOT exceed 80 bytes in length:
     // https://docs.oasis-open.org/security/saml/v2.0/saml-bindings-2.0-os.pdf
     session.put(SAML_RELAY_STATE_ATTRIBUTE, csrfToken);
@@ -168,7 +208,8 @@ public class SamlAPI implements Saml {
     final boolean generateMissingConfig = false; // do not allow login if config is missing
     return findSaml2Client(routingContext, generateMissingConfig, reloadClient, vertxContext)
       .map(SamlClientComposite::getClient)
-      .map(saml2client -> postSamlLoginResponse(routingContext, saml2client));
+      .map(saml2client -> SamlMetrics.timeSync(Phase.AUTHN_REQUEST, saml2client.getName(),
+          () -> postSamlLoginResponse(routingContext, saml2client)));
   }
 
   private Response postSamlLoginResponse(RoutingContext routingContext, SAML2Client saml2Client) {
@@ -176,11 +217,14 @@ public class SamlAPI implements Saml {
       final SessionStore sessionStore = new DummySessionStore(routingContext.vertx(), routingContext.session());
       final VertxWebContext webContext = new VertxWebContext(routingContext, sessionStore);
       RedirectionAction redirectionAction = saml2Client.getRedirectionAction(webContext, sessionStore).orElse(null);
-      if (!(redirectionAction instanceof OkAction)) {
+      SamlLogin dto;
+      if (redirectionAction instanceof SamlLoginAction samlLoginAction) {
+        dto = samlLoginAction.getSamlLogin();
+      } else if (redirectionAction instanceof OkAction okAction) {
+        dto = Json.decodeValue(okAction.getContent(), SamlLogin.class);
+      } else {
         throw new IllegalStateException("redirectionAction must be OkAction: " + redirectionAction);
       }
-      String responseJsonString = ((OkAction) redirectionAction).getContent();
-      SamlLogin dto = Json.decodeValue(responseJsonString, SamlLogin.class);
       routingContext.response().headers().clear(); // saml2Client sets Content-Type: text/html header
       addCredentialsAndOriginHeaders(routingContext);
       return PostSamlLoginResponse.respond200WithApplicationJson(dto);
@@ -206,13 +250,16 @@ public class SamlAPI implements Saml {
   @Override
   public void postSamlCallback(String body, RoutingContext routingContext, Map<String, String> okapiHeaders,
     Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
-    doPostSamlCallback(body, routingContext, okapiHeaders, asyncResultHandler, vertxContext);
+    doPostSamlCallback(body, routingContext, okapiHeaders,
+      SamlMetrics.timeRequest("callback", okapiHeaders.get(XOkapiHeaders.TENANT), asyncResultHandler), vertxContext);
   }
 
   @Override
   public void postSamlCallbackWithExpiry(String body, RoutingContext routingContext, Map<String, String> okapiHeaders,
     Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
-    doPostSamlCallback(body, routingContext, okapiHeaders, asyncResultHandler, vertxContext);
+    doPostSamlCallback(body, routingContext, okapiHeaders,
+      SamlMetrics.timeRequest("callback-with-expiry", okapiHeaders.get(XOkapiHeaders.TENANT), asyncResultHandler),
+      vertxContext);
   }
 
   private void doPostSamlCallback(String body, RoutingContext routingContext, Map<String, String> okapiHeaders,
@@ -258,15 +305,16 @@ public class SamlAPI implements Saml {
             new JsonObject().put("sub", userObject.getString(USERNAME)).put("user_id", userId));
 
           var tokenSignEndpoint = getTokenSignEndpoint(configuration);
-          return fetchToken(webClient, payload, parsedHeaders, tokenSignEndpoint)
-            .map(jsonResponse -> {
+          return SamlMetrics.time(Phase.TOKEN_SIGN, parsedHeaders.getTenant(),
+              () -> fetchToken(webClient, payload, parsedHeaders, tokenSignEndpoint))
+            .map(jsonResponse -> SamlMetrics.timeSync(Phase.COOKIE_REDIRECT, parsedHeaders.getTenant(), () -> {
               if (isLegacyResponse(tokenSignEndpoint)) {
                 return redirectResponseLegacy(jsonResponse, stripesBaseUrl, originalUrl);
               } else {
                 var okapiPath = UrlUtil.getPathFromOkapiUrl(parsedHeaders.getUrl());
                 return redirectResponse(jsonResponse, stripesBaseUrl, originalUrl, okapiPath);
               }
-            });
+            }));
           });
       })
       .onSuccess(response -> asyncResultHandler.handle(Future.succeededFuture(response)))
@@ -294,10 +342,11 @@ public class SamlAPI implements Saml {
     } else if (cause instanceof UserService.UserErrorException) {
       response = PostSamlCallbackResponse.respond400WithTextPlain(cause.getMessage());
     } else {
-      removeSaml2Client(routingContext);
+      evictSaml2Client(routingContext, cause);
       response = PostSamlCallbackResponse.respond500WithTextPlain(cause.getMessage());
     }
     log.error(cause.getMessage(), cause);
+    SamlMetrics.recordError("callback", OkapiHelper.okapiHeaders(routingContext).getTenant(), cause);
     return response;
   }
 
@@ -366,7 +415,7 @@ public class SamlAPI implements Saml {
       .build();
   }
 
-  private String refreshTokenCookie(String refreshToken, String refreshTokenExpiration, String okapiPath) {
+  static String refreshTokenCookie(String refreshToken, String refreshTokenExpiration, String okapiPath) {
     // The refresh token expiration is the time after which the token will be
     // considered expired.
     var exp = Instant.parse(refreshTokenExpiration).getEpochSecond();
@@ -392,7 +441,7 @@ public class SamlAPI implements Saml {
     return rtCookie;
   }
 
-  private String accessTokenCookie(String accessToken, String accessTokenExpiration, String okapiPath) {
+  static String accessTokenCookie(String accessToken, String accessTokenExpiration, String okapiPath) {
     // The refresh token expiration is the time after which the token will be
     // considered expired.
     var exp = Instant.parse(accessTokenExpiration).getEpochSecond();
@@ -421,6 +470,7 @@ public class SamlAPI implements Saml {
   public void getSamlRegenerate(RoutingContext routingContext, Map<String, String> okapiHeaders,
     Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
 
+    var handler = SamlMetrics.timeRequest("regenerate", okapiHeaders.get(XOkapiHeaders.TENANT), asyncResultHandler);
     regenerateSaml2Config(routingContext, vertxContext)
       .compose(metadata ->
         configurationsDao.storeEntry(vertxContext.owner(), OkapiHelper.okapiHeaders(okapiHeaders),
@@ -430,15 +480,64 @@ public class SamlAPI implements Saml {
         )
       )
       .onSuccess(res ->
-        asyncResultHandler.handle(Future.succeededFuture(GetSamlRegenerateResponse.respond200WithApplicationJson(res)))
+        handler.handle(Future.succeededFuture(GetSamlRegenerateResponse.respond200WithApplicationJson(res)))
       )
       .onFailure(cause -> {
         log.error(cause.getMessage(), cause);
-        asyncResultHandler
+        SamlMetrics.recordError("regenerate", okapiHeaders.get(XOkapiHeaders.TENANT), cause);
+        handler
           .handle(Future.succeededFuture(GetSamlRegenerateResponse.respond500WithTextPlain(cause.getMessage())));
       });
   }
 
+  /**
+   * SP metadata of the tenant's client, generated once per client. Supports If-None-Match.
+   */
+  @Override
+  public void getSamlMetadata(RoutingContext routingContext, Map<String, String> okapiHeaders,
+    Handler<AsyncResult<Response>> asyncResultHandler, Context vertxContext) {
+
+    var handler = SamlMetrics.timeRequest("metadata", okapiHeaders.get(XOkapiHeaders.TENANT), asyncResultHandler);
+    findSaml2Client(routingContext, false, false, vertxContext)
+      .compose(composite -> spMetadata(composite, vertxContext.owner()))
+      .onSuccess(spMetadata -> {
+        if (spMetadata.matches(routingContext.request().getHeader(IF_NONE_MATCH))) {
+          handler.handle(Future.succeededFuture(Response.status(304)
+              .header(ETAG_HEADER, spMetadata.getEtag())
+              .header(CACHE_CONTROL_HEADER, "no-cache")
+              .build()));
+          return;
+        }
+        handler.handle(Future.succeededFuture(Response.status(200)
+            .header(CONTENT_TYPE_HEADER, "application/xml")
+            .header(ETAG_HEADER, spMetadata.getEtag())
+            .header(CACHE_CONTROL_HEADER, "no-cache")
+            .entity(spMetadata.getContent())
+            .build()));
+      })
+      .onFailure(cause -> {
+        log.error(cause.getMessage(), cause);
+        SamlMetrics.recordError("metadata", okapiHeaders.get(XOkapiHeaders.TENANT), cause);
+        handler.handle(Future.succeededFuture(GetSamlMetadataResponse.respond500WithTextPlain(cause.getMessage())));
+      });
+  }
+
+  /**
+   * The cached SP metadata of the client, serialize it on a worker thread if there is none.
+   * A changed keystore, callback or Okapi URL loads a new client and therefore new metadata.
+   */
+  private static Future<SpMetadata> spMetadata(SamlClientComposite composite, Vertx vertx) {
+    SpMetadata cached = composite.getSpMetadata();
+    if (cached != null) {
+      return Future.succeededFuture(cached);
+    }
+    return vertx.executeBlocking(() -> {
+      SpMetadata spMetadata = new SpMetadata(composite.getClient().getServiceProviderMetadataResolver().getMetadata());
+      composite.setSpMetadata(spMetadata);
+      return spMetadata;
+    }, false);
+  }
+
   private static Map<String, String> localCreateMap(String code, String value) {
     Map<String, String> map2Update = new HashMap<>();
     map2Update.put(code, value);
@@ -473,9 +572,14 @@ public class SamlAPI implements Saml {
       })
       .onSuccess(checkValuesHandler -> {
         OkapiHeaders parsedHeaders = OkapiHelper.okapiHeaders(okapiHeaders);
-        configurationsDao.getConfiguration(vertxContext.owner(), parsedHeaders, true)
-          .compose(config -> storeUpdatedSamlConfiguration(rc, parsedHeaders,
-            updateSamlConfiguration(config, updatedConfig), vertxContext))
+        configurationsDao.updateSamlConfiguration(vertxContext.owner(), parsedHeaders,
+            config -> updateSamlConfiguration(config, updatedConfig))
+          .compose(stored -> reloadSaml2Client(rc, parsedHeaders, vertxContext))
+          // user property and SAML attribute may have changed
+          .onComplete(x -> {
+            UserLookupCache.getInstance().invalidate(parsedHeaders.getTenant());
+            ClientEvictionPolicy.getInstance().reset(parsedHeaders.getTenant());
+          })
           .onFailure(cause -> {
             log.error(cause.getMessage(), cause);
             asyncResultHandler.handle(
@@ -486,12 +590,13 @@ public class SamlAPI implements Saml {
       });
   }
 
-  private Future<SamlConfig> storeUpdatedSamlConfiguration(RoutingContext rc, OkapiHeaders parsedHeaders,
-    SamlConfiguration samlConfigurationUpdated, Context vertxContext) {
+  private Future<SamlConfig> reloadSaml2Client(RoutingContext rc, OkapiHeaders parsedHeaders,
+    Context vertxContext) {
 
-    return configurationsDao.storeSamlConfiguration(vertxContext.owner(), parsedHeaders, samlConfigurationUpdated)
-      .compose(configurationSavedEvent ->
-        findSaml2Client(rc, true, true, vertxContext))
+    // the new configuration may fix the client
+    ClientLoadBreaker.getInstance().reset(parsedHeaders.getTenant());
+    SamlCheckCache.getInstance().invalidate(parsedHeaders.getTenant());
+    return findSaml2Client(rc, true, true, vertxContext)
       .map(configurationLoadEvent -> configToDto(configurationLoadEvent.getConfiguration()));
   }
 
@@ -540,13 +645,18 @@ public class SamlAPI implements Saml {
         return vertx.executeBlocking(blockingCode -> {
           SAML2Configuration cfg = saml2Client.getConfiguration();
 
-        // force metadata generation then init
+          // the client has been initialized before it was published, only a forced init regenerates the metadata
           cfg.setForceServiceProviderMetadataGeneration(true);
-          saml2Client.init();
-          cfg.setForceServiceProviderMetadataGeneration(false);
+          try {
+            saml2Client.init(true);
+          } finally {
+            cfg.setForceServiceProviderMetadataGeneration(false);
+          }
 
           try {
-            blockingCode.complete(saml2Client.getServiceProviderMetadataResolver().getMetadata());
+            String metadata = saml2Client.getServiceProviderMetadataResolver().getMetadata();
+            result.setSpMetadata(new SpMetadata(metadata));
+            blockingCode.complete(metadata);
           } catch (Exception e) {
             blockingCode.fail(e);
           }
@@ -569,16 +679,30 @@ public class SamlAPI implements Saml {
 
     String tenantId = OkapiHelper.okapiHeaders(routingContext).getTenant();
     SamlConfigHolder configHolder = SamlConfigHolder.getInstance();
-    SamlClientComposite clientComposite = configHolder.findClient(tenantId);
+    Supplier<Future<SamlClientComposite>> loader = () ->
+      SamlClientLoader.loadFromConfiguration(routingContext, generateMissingConfig, vertxContext);
 
-    if (clientComposite != null && !reloadClient) {
-      return Future.succeededFuture(clientComposite);
-    }
-    if (reloadClient) {
-      configHolder.removeClient(tenantId);
+    return SamlMetrics.time(Phase.CLIENT_LOOKUP, tenantId, () -> {
+      if (reloadClient) {
+        return configHolder.reloadClient(tenantId, loader);
+      }
+      return configHolder.findOrLoadClient(tenantId, loader);
+    });
+  }
+
+  /**
+   * Remove the client of the tenant if cause is a failure of the client and the client has not been
+   * evicted recently, see {@link ClientEvictionPolicy}.
+   */
+  private void evictSaml2Client(RoutingContext routingContext, Throwable cause) {
+    String tenantId = OkapiHelper.okapiHeaders(routingContext).getTenant();
+    var decision = ClientEvictionPolicy.getInstance().decide(tenantId, cause);
+    SamlMetrics.recordEviction(tenantId, decision);
+    if (decision == ClientEvictionPolicy.Decision.EVICT) {
+      removeSaml2Client(routingContext);
+    } else {
+      log.debug("Keeping SAML client of tenant {}: {}", tenantId, decision);
     }
-    return SamlClientLoader.loadFromConfiguration(routingContext, generateMissingConfig, vertxContext)
-      .onSuccess(result -> configHolder.putClient(tenantId, result));
   }
 
   private void removeSaml2Client(RoutingContext routingContext) {
@@ -616,6 +740,7 @@ public class SamlAPI implements Saml {
       .withSamlAttribute(config.getSamlAttribute())
       .withUserProperty(config.getUserProperty())
       .withCallback(config.getCallback())
+      .withIdpEntityId(config.getIdpEntityId())
       .withUseSecureTokens(Boolean.valueOf(config.getUseSecureTokens()))
       .withMetadataInvalidated(Boolean.valueOf(config.getMetadataInvalidated()));
     try {
@@ -697,6 +822,7 @@ public class SamlAPI implements Saml {
     SamlConfiguration result = new SamlConfiguration();
 
     result.setId(config.getId());
+    result.setVersion(config.getVersion());
 
     result.setIdpUrl(config.getIdpUrl());
     result.setMetadataInvalidated(config.getMetadataInvalidated());
@@ -718,6 +844,12 @@ public class SamlAPI implements Saml {
     result.setIdpMetadata(config.getIdpMetadata());
     ConfigEntryUtil.valueChanged(config.getSamlAttribute(), updatedConfig.getIdpMetadata(), result::setIdpMetadata);
 
+    result.setIdpEntityId(config.getIdpEntityId());
+    ConfigEntryUtil.valueChanged(config.getIdpEntityId(), updatedConfig.getIdpEntityId(), idpEntityId -> {
+      result.setIdpEntityId(idpEntityId);
+      result.setMetadataInvalidated("true");
+    });
+
     result.setOkapiUrl(config.getOkapiUrl());
     ConfigEntryUtil.valueChanged(config.getOkapiUrl(), updatedConfig.getOkapiUrl().toString(), okapiUrl -> {
       result.setOkapiUrl(okapiUrl);
@@ -1,5 +1,6 @@
 package org.folio.rest.impl;
 
+import java.util.List;
 import java.util.Map;
 
 import io.vertx.core.Context;
@@ -7,6 +8,7 @@ import io.vertx.core.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.config.ClientWarmUp;
 import org.folio.dao.ConfigurationsDao;
 import org.folio.dao.ConfigurationsDao.MissingHeaderException;
 import org.folio.dao.impl.ConfigurationsDaoImpl;
@@ -29,7 +31,8 @@ public class TenantRefAPI extends TenantAPI {
             return Future.succeededFuture(0);
           }
           return configurationsMigration(headers, vertxContext);
-        });
+        })
+        .onSuccess(x -> ClientWarmUp.warmUp(vertxContext, List.of(tenantId)));
   }
 
   private Future<Integer> configurationsMigration(Map<String, String> headers, Context vertxContext) {
@@ -0,0 +1,213 @@
+package org.folio.service;
+
+import static org.folio.util.UserFields.ID;
+import static org.folio.util.UserFields.USERNAME;
+
+import io.vertx.core.json.JsonObject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Opt-in cache of the resolution of a SAML attribute value to a FOLIO user.
+ *
+ * <p>Key is the tenant of the request, the user property and the SAML attribute value; value is the
+ * user id, username and the tenant of the user (differs from the tenant of the request for an ECS
+ * login). Each tenant has its own LRU of bounded size; entries expire after the TTL.
+ * A hit saves the /user-tenants and /users lookups of the callback.
+ *
+ * <p>Disabled if the TTL is 0 (default).
+ */
+public class UserLookupCache {
+
+  public static final int DEFAULT_SIZE = 1000;
+
+  private static final UserLookupCache instance = new UserLookupCache(System::nanoTime);
+
+  private final ConcurrentMap<String, Map<Key, CachedUser>> tenants = new ConcurrentHashMap<>(); // key: tenantId
+  private final LongSupplier nanoClock;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private volatile long ttlNanos = 0;
+  private volatile int size = DEFAULT_SIZE;
+
+  private record Key(String userProperty, String value) {
+  }
+
+  /**
+   * A resolved user.
+   */
+  public static class CachedUser {
+    private final String id;
+    private final String username;
+    private final String tenant;
+    private final long expiresNanos;
+
+    CachedUser(String id, String username, String tenant, long expiresNanos) {
+      this.id = id;
+      this.username = username;
+      this.tenant = tenant;
+      this.expiresNanos = expiresNanos;
+    }
+
+    public String getTenant() {
+      return tenant;
+    }
+
+    /**
+     * @return the user fields used by the callback, like in a /users response
+     */
+    public JsonObject toJson() {
+      return new JsonObject().put(ID, id).put(USERNAME, username).put("active", true);
+    }
+  }
+
+  UserLookupCache(LongSupplier nanoClock) {
+    this.nanoClock = nanoClock;
+  }
+
+  public static UserLookupCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * @param ttl value of the USER_CACHE_TTL environment variable: seconds, 0 or null disables the cache
+   */
+  public void setTtl(String ttl) {
+    long seconds = parse("USER_CACHE_TTL", ttl, 0);
+    ttlNanos = TimeUnit.SECONDS.toNanos(seconds);
+    if (seconds == 0) {
+      invalidateAll();
+    }
+  }
+
+  /**
+   * @param size value of the USER_CACHE_SIZE environment variable: maximum entries per tenant, null for default
+   */
+  public void setSize(String size) {
+    long entries = parse("USER_CACHE_SIZE", size, DEFAULT_SIZE);
+    if (entries < 1 || entries > Integer.MAX_VALUE) {
+      throw new NumberFormatException("Bad value of environmental variable USER_CACHE_SIZE: \"" + size + "\"");
+    }
+    this.size = (int) entries;
+    invalidateAll();
+  }
+
+  private static long parse(String name, String value, long defaultValue) {
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      long result = Long.parseLong(value);
+      if (result < 0) {
+        throw new NumberFormatException();
+      }
+      return result;
+    } catch (NumberFormatException e) {
+      throw new NumberFormatException("Bad value of environmental variable " + name + ": \"" + value + "\"");
+    }
+  }
+
+  public boolean isEnabled() {
+    return ttlNanos > 0;
+  }
+
+  /**
+   * @return the cached user, or null if there is none or it has expired
+   */
+  public CachedUser get(String tenant, String userProperty, String value) {
+    if (!isEnabled() || tenant == null) {
+      return null;
+    }
+    Map<Key, CachedUser> users = tenants.get(tenant);
+    CachedUser user = null;
+    if (users != null) {
+      synchronized (users) {
+        Key key = new Key(userProperty, value);
+        user = users.get(key);
+        if (user != null && nanoClock.getAsLong() - user.expiresNanos >= 0) {
+          users.remove(key);
+          user = null;
+        }
+      }
+    }
+    if (user == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return user;
+  }
+
+  /**
+   * Cache the user found by /users. Inactive users are not cached so that a reactivation
+   * takes effect immediately.
+   *
+   * @param tenant the tenant of the request
+   * @param user the user record
+   * @param userTenant the tenant of the user
+   */
+  public void put(String tenant, String userProperty, String value, JsonObject user, String userTenant) {
+    if (!isEnabled() || tenant == null || !user.getBoolean("active", false)) {
+      return;
+    }
+    CachedUser cachedUser = new CachedUser(user.getString(ID), user.getString(USERNAME),
+        userTenant, nanoClock.getAsLong() + ttlNanos);
+    Map<Key, CachedUser> users = tenants.computeIfAbsent(tenant, t -> lru(size));
+    synchronized (users) {
+      users.put(new Key(userProperty, value), cachedUser);
+    }
+  }
+
+  private static Map<Key, CachedUser> lru(int maxEntries) {
+    return new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, CachedUser> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Drop all users of the tenant, for example after its SAML configuration has changed.
+   */
+  public void invalidate(String tenant) {
+    if (tenant != null) {
+      tenants.remove(tenant);
+    }
+  }
+
+  /**
+   * Drop a single user of the tenant.
+   */
+  public void invalidate(String tenant, String userProperty, String value) {
+    Map<Key, CachedUser> users = tenant == null ? null : tenants.get(tenant);
+    if (users != null) {
+      synchronized (users) {
+        users.remove(new Key(userProperty, value));
+      }
+    }
+  }
+
+  public void invalidateAll() {
+    tenants.clear();
+  }
+
+  /**
+   * @return number of lookups answered by the cache
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return number of lookups not answered by the cache while it is enabled
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+}
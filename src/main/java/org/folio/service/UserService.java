@@ -11,11 +11,15 @@ import io.vertx.ext.web.client.predicate.ResponsePredicate;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.folio.config.DistributedReplayCache;
 import org.folio.config.model.SamlConfiguration;
+import org.folio.metrics.SamlMetrics;
+import org.folio.metrics.SamlMetrics.Phase;
 import org.folio.okapi.common.XOkapiHeaders;
 import org.folio.util.StringUtil;
 import org.folio.util.model.OkapiHeaders;
 import org.pac4j.core.context.session.SessionStore;
+import org.pac4j.core.credentials.Credentials;
 import org.pac4j.core.profile.UserProfile;
 import org.pac4j.saml.client.SAML2Client;
 import org.pac4j.saml.credentials.SAML2Credentials;
@@ -24,6 +28,8 @@ import org.pac4j.vertx.VertxWebContext;
 import javax.ws.rs.core.UriBuilder;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 import static org.folio.util.UserFields.*;
 
@@ -48,11 +54,38 @@ public class UserService {
     }
   }
 
+  private static volatile boolean speculativeUserLookup = false;
+
+  /**
+   * Look up the user in the tenant of the request in parallel to the /user-tenants lookup.
+   *
+   * <p>The speculative result is discarded if /user-tenants resolves a different tenant (ECS login).
+   *
+   * @param value "true" to enable, "false" or null to disable
+   */
+  public static void setSpeculativeUserLookup(String value) {
+    if (value == null) {
+      speculativeUserLookup = false;
+      return;
+    }
+    if (!"true".equals(value) && !"false".equals(value)) {
+      throw new IllegalArgumentException("Bad value of environmental variable USER_LOOKUP_SPECULATIVE: \""
+          + value + "\"");
+    }
+    speculativeUserLookup = Boolean.parseBoolean(value);
+  }
+
+  public static boolean isSpeculativeUserLookup() {
+    return speculativeUserLookup;
+  }
+
   public Future<JsonObject> getUser(WebClient webClient, SamlConfiguration configuration,
                                     VertxWebContext webContext, SAML2Client client, SessionStore sessionStore,
                                     OkapiHeaders parsedHeaders) {
     String userPropertyName = StringUtils.defaultIfBlank(configuration.getUserProperty(), EXTERNAL_SYSTEM_ID);
-    var credentialsOptional = client.getCredentials(webContext, sessionStore);
+    String tenant = parsedHeaders.getTenant();
+    Optional<Credentials> credentialsOptional = SamlMetrics.timeSync(Phase.RESPONSE_VALIDATION, tenant,
+        () -> client.getCredentials(webContext, sessionStore));
     var credentials =
       (SAML2Credentials) credentialsOptional.orElseThrow(() -> new NullPointerException("Saml credentials was null"));
 
@@ -61,22 +94,64 @@ public class UserService {
     String usersCql = getCqlUserQuery(userPropertyName, samlAttributeValue);
     String userQuery = UriBuilder.fromPath("/users").queryParam("query", usersCql).build().toString();
 
+    UserLookupCache cache = UserLookupCache.getInstance();
+    // the message id the client has attached to the request
+    return DistributedReplayCache.getInstance().confirm(webContext.getVertxRoutingContext().vertx(), tenant, webContext)
+      .compose(x -> {
+        UserLookupCache.CachedUser cachedUser = cache.get(tenant, userPropertyName, samlAttributeValue);
+        if (cachedUser != null) {
+          parsedHeaders.setTenant(cachedUser.getTenant());
+          return Future.succeededFuture(cachedUser.toJson());
+        }
+        return lookupUser(webClient, parsedHeaders, userQuery, userPropertyName, samlAttributeValue)
+          .onSuccess(user ->
+            cache.put(tenant, userPropertyName, samlAttributeValue, user, parsedHeaders.getTenant()));
+      });
+  }
+
+  private Future<JsonObject> lookupUser(WebClient webClient, OkapiHeaders parsedHeaders, String userQuery,
+                                        String userPropertyName, String samlAttributeValue) {
+    String tenant = parsedHeaders.getTenant();
+    if (!speculativeUserLookup) {
+      return extractTenantId(userPropertyName, samlAttributeValue, webClient, parsedHeaders)
+        .compose(tenantId -> fetchUser(webClient, parsedHeaders, tenantId, userQuery, userPropertyName,
+            samlAttributeValue));
+    }
+    // extractTenantId may change the tenant of parsedHeaders, the speculative lookup uses the original one
+    Future<JsonObject> speculativeUser =
+      fetchUser(webClient, parsedHeaders, tenant, userQuery, userPropertyName, samlAttributeValue);
     return extractTenantId(userPropertyName, samlAttributeValue, webClient, parsedHeaders)
-      .compose(tenantId -> webClient.getAbs(parsedHeaders.getUrl() + userQuery)
-        .putHeader(XOkapiHeaders.TOKEN, parsedHeaders.getToken())
-        .putHeader(XOkapiHeaders.URL, parsedHeaders.getUrl())
-        .putHeader(XOkapiHeaders.TENANT, tenantId)
-        .expect(ResponsePredicate.SC_OK)
-        .expect(ResponsePredicate.JSON)
-        .send()
-        .map(res -> {
-          JsonArray users = res.bodyAsJsonObject().getJsonArray("users");
-          if (users.isEmpty()) {
-            String message = "No user found by " + userPropertyName + " == " + samlAttributeValue;
-            throw new UserErrorException(message);
-          }
-          return users.getJsonObject(0);
-        }));
+      .compose(tenantId -> {
+        if (Objects.equals(tenant, tenantId)) {
+          SamlMetrics.recordSpeculation(tenant, true);
+          return speculativeUser;
+        }
+        SamlMetrics.recordSpeculation(tenant, false);
+        return fetchUser(webClient, parsedHeaders, tenantId, userQuery, userPropertyName, samlAttributeValue);
+      }, e -> {
+        SamlMetrics.recordSpeculation(tenant, false);
+        return Future.failedFuture(e);
+      });
+  }
+
+  private Future<JsonObject> fetchUser(WebClient webClient, OkapiHeaders parsedHeaders, String tenantId,
+                                       String userQuery, String userPropertyName, String samlAttributeValue) {
+    return SamlMetrics.time(Phase.USERS, tenantId, () ->
+        webClient.getAbs(parsedHeaders.getUrl() + userQuery)
+          .putHeader(XOkapiHeaders.TOKEN, parsedHeaders.getToken())
+          .putHeader(XOkapiHeaders.URL, parsedHeaders.getUrl())
+          .putHeader(XOkapiHeaders.TENANT, tenantId)
+          .expect(ResponsePredicate.SC_OK)
+          .expect(ResponsePredicate.JSON)
+          .send())
+      .map(res -> {
+        JsonArray users = res.bodyAsJsonObject().getJsonArray("users");
+        if (users.isEmpty()) {
+          String message = "No user found by " + userPropertyName + " == " + samlAttributeValue;
+          throw new UserErrorException(message);
+        }
+        return users.getJsonObject(0);
+      });
   }
 
   private Future<String> extractTenantId(String userPropertyName, String value, WebClient webClient, OkapiHeaders okapiHeaders) {
@@ -119,11 +194,12 @@ public class UserService {
       }
     }
 
-    return request.putHeader(XOkapiHeaders.TOKEN, okapiHeaders.getToken())
-      .putHeader(XOkapiHeaders.TENANT, okapiHeaders.getTenant())
-      .expect(ResponsePredicate.SC_OK)
-      .expect(ResponsePredicate.JSON)
-      .send()
+    return SamlMetrics.time(Phase.USER_TENANTS, okapiHeaders.getTenant(), () ->
+        request.putHeader(XOkapiHeaders.TOKEN, okapiHeaders.getToken())
+          .putHeader(XOkapiHeaders.TENANT, okapiHeaders.getTenant())
+          .expect(ResponsePredicate.SC_OK)
+          .expect(ResponsePredicate.JSON)
+          .send())
       .map(HttpResponse::bodyAsJsonObject)
       .recover(e -> {
         String message = String.format(USER_TENANT_GET_ERROR, userPropertyName, value, e.getMessage());
@@ -0,0 +1,147 @@
+package org.folio.session;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.auth.PRNG;
+import io.vertx.ext.web.Session;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Request-scoped session of the login request that holds the relay state for pac4j.
+ *
+ * <p>Not stored anywhere and not thread-safe, like the request it belongs to. The id is drawn from
+ * a single {@link PRNG} per Vert.x instance: a PRNG seeds a SecureRandom and registers a periodic
+ * reseed timer, so creating one per request is expensive.
+ *
+ * <p>The PRNG is kept in a local map of the Vert.x instance and lives as long as it: the map
+ * and the reseed timer go away when the Vert.x instance is closed, so the PRNG is never closed
+ * explicitly.
+ */
+public class RelayStateSession implements Session {
+
+  private static final String PRNG_MAP = RelayStateSession.class.getName() + ".prng";
+
+  private record SharedPrng(PRNG prng) implements Shareable {
+  }
+
+  private final PRNG prng;
+  private final Map<String, Object> data = new HashMap<>(4);
+  private final long lastAccessed = System.currentTimeMillis();
+  private String id;
+
+  public RelayStateSession(Vertx vertx) {
+    this.prng = prng(vertx);
+  }
+
+  /**
+   * The shared PRNG of the Vert.x instance.
+   */
+  static PRNG prng(Vertx vertx) {
+    LocalMap<String, SharedPrng> map = vertx.sharedData().getLocalMap(PRNG_MAP);
+    return map.computeIfAbsent("prng", key -> new SharedPrng(new PRNG(vertx))).prng();
+  }
+
+  @Override
+  public Session regenerateId() {
+    id = null;
+    return this;
+  }
+
+  @Override
+  public String id() {
+    if (id == null) {
+      byte[] bytes = new byte[16];
+      prng.nextBytes(bytes);
+      StringBuilder hex = new StringBuilder(32);
+      for (byte b : bytes) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      id = hex.toString();
+    }
+    return id;
+  }
+
+  @Override
+  public Session put(String key, Object obj) {
+    if (obj == null) {
+      data.remove(key);
+    } else {
+      data.put(key, obj);
+    }
+    return this;
+  }
+
+  @Override
+  public Session putIfAbsent(String key, Object obj) {
+    if (obj != null) {
+      data.putIfAbsent(key, obj);
+    }
+    return this;
+  }
+
+  @Override
+  public Session computeIfAbsent(String key, Function<String, Object> mappingFunction) {
+    data.computeIfAbsent(key, mappingFunction);
+    return this;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> T get(String key) {
+    return (T) data.get(key);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> T remove(String key) {
+    return (T) data.remove(key);
+  }
+
+  @Override
+  public Map<String, Object> data() {
+    return data;
+  }
+
+  @Override
+  public long lastAccessed() {
+    return lastAccessed;
+  }
+
+  @Override
+  public void destroy() {
+    data.clear();
+  }
+
+  @Override
+  public boolean isDestroyed() {
+    return false;
+  }
+
+  @Override
+  public boolean isRegenerated() {
+    return false;
+  }
+
+  @Override
+  public String oldId() {
+    return null;
+  }
+
+  @Override
+  public long timeout() {
+    return 0;
+  }
+
+  @Override
+  public void setAccessed() {
+    // request-scoped, nothing to do
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return data.isEmpty();
+  }
+}
@@ -41,7 +41,7 @@ public class SamlConfigurationUtil {
 
   public static DiffResult<SamlConfiguration> compareSamlConfigurations(SamlConfiguration samlConfigFirst, SamlConfiguration samlConfigSecond) {
     return new ReflectionDiffBuilder<>(samlConfigFirst, samlConfigSecond, ToStringStyle.SHORT_PREFIX_STYLE)
-      .setExcludeFieldNames(SamlConfiguration.ID_CODE, SamlConfiguration.IDS_LIST_CODE)
+      .setExcludeFieldNames(SamlConfiguration.ID_CODE, SamlConfiguration.IDS_LIST_CODE, "version")
       .build();
   }
 }
@@ -0,0 +1,13 @@
+-- Notify all module instances about a changed SAML configuration of the tenant,
+-- see org.folio.config.ConfigurationChangeListener.
+CREATE OR REPLACE FUNCTION ${myuniversity}_${mymodule}.configuration_notify() RETURNS trigger AS $$
+BEGIN
+  PERFORM pg_notify('mod_login_saml_configuration', '${myuniversity}');
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS configuration_notify ON ${myuniversity}_${mymodule}.configuration;
+CREATE TRIGGER configuration_notify
+  AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON ${myuniversity}_${mymodule}.configuration
+  FOR EACH STATEMENT EXECUTE FUNCTION ${myuniversity}_${mymodule}.configuration_notify();
@@ -0,0 +1,7 @@
+-- Ids of SAML messages seen by any module instance, see org.folio.config.DistributedReplayCache.
+-- Unlogged: losing the ids on a database crash only reopens the replay window of unexpired messages.
+CREATE UNLOGGED TABLE IF NOT EXISTS ${myuniversity}_${mymodule}.replay_cache (
+  id text PRIMARY KEY,
+  expires timestamptz NOT NULL
+);
+CREATE INDEX IF NOT EXISTS replay_cache_expires_idx ON ${myuniversity}_${mymodule}.replay_cache (expires);
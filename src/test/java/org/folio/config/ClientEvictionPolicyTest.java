@@ -0,0 +1,70 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import net.shibboleth.utilities.java.support.resolver.ResolverException;
+import org.folio.config.ClientEvictionPolicy.Decision;
+import org.junit.Test;
+import org.opensaml.xmlsec.encryption.support.DecryptionException;
+import org.pac4j.core.exception.TechnicalException;
+import org.pac4j.saml.exceptions.SAMLSignatureValidationException;
+
+public class ClientEvictionPolicyTest {
+
+  private long now;
+
+  @Test
+  public void clientFailures() {
+    assertThat(ClientEvictionPolicy.isClientFailure(new SAMLSignatureValidationException("untrusted")), is(true));
+    assertThat(ClientEvictionPolicy.isClientFailure(
+        new TechnicalException("metadata", new ResolverException("x"))), is(true));
+    assertThat(ClientEvictionPolicy.isClientFailure(
+        new RuntimeException(new TechnicalException(new DecryptionException("x")))), is(true));
+  }
+
+  @Test
+  public void otherFailures() {
+    assertThat(ClientEvictionPolicy.isClientFailure(null), is(false));
+    assertThat(ClientEvictionPolicy.isClientFailure(new RuntimeException("token/sign 500")), is(false));
+    assertThat(ClientEvictionPolicy.isClientFailure(new RuntimeException(new TimeoutException())), is(false));
+  }
+
+  @Test
+  public void rateLimited() {
+    ClientEvictionPolicy policy = new ClientEvictionPolicy(() -> now);
+    policy.setInterval("10");
+    var cause = new SAMLSignatureValidationException("untrusted");
+    assertThat(policy.decide("a", cause), is(Decision.EVICT));
+    assertThat(policy.decide("a", cause), is(Decision.RATE_LIMITED));
+    assertThat(policy.decide("b", cause), is(Decision.EVICT));
+    assertThat(policy.decide("a", new RuntimeException()), is(Decision.KEEP));
+    now += TimeUnit.SECONDS.toNanos(9);
+    assertThat(policy.decide("a", cause), is(Decision.RATE_LIMITED));
+    now += TimeUnit.SECONDS.toNanos(1);
+    assertThat(policy.decide("a", cause), is(Decision.EVICT));
+    policy.reset("a");
+    assertThat(policy.decide("a", cause), is(Decision.EVICT));
+    assertThat(policy.decide(null, cause), is(Decision.KEEP));
+  }
+
+  @Test
+  public void noLimit() {
+    ClientEvictionPolicy policy = new ClientEvictionPolicy(() -> now);
+    policy.setInterval("0");
+    var cause = new SAMLSignatureValidationException("untrusted");
+    assertThat(policy.decide("a", cause), is(Decision.EVICT));
+    assertThat(policy.decide("a", cause), is(Decision.EVICT));
+  }
+
+  @Test
+  public void setInterval() {
+    ClientEvictionPolicy policy = new ClientEvictionPolicy(() -> now);
+    policy.setInterval(null);
+    assertThrows(NumberFormatException.class, () -> policy.setInterval("x"));
+    assertThrows(NumberFormatException.class, () -> policy.setInterval("-1"));
+  }
+}
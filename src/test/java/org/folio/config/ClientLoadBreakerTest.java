@@ -0,0 +1,111 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ClientLoadBreakerTest {
+
+  private long now;
+
+  private ClientLoadBreaker breaker() {
+    ClientLoadBreaker breaker = new ClientLoadBreaker(() -> now);
+    breaker.setThreshold("2");
+    breaker.setRetryInterval("30");
+    return breaker;
+  }
+
+  @Test
+  public void opensAfterThreshold() {
+    ClientLoadBreaker breaker = breaker();
+    breaker.acquire("a");
+    breaker.onFailure("a");
+    breaker.acquire("a");
+    assertThat(breaker.isOpen("a"), is(false));
+    breaker.onFailure("a");
+    assertThat(breaker.isOpen("a"), is(true));
+    assertThrows(ClientLoadBreaker.OpenException.class, () -> breaker.acquire("a"));
+    breaker.acquire("b");
+  }
+
+  @Test
+  public void successResetsFailures() {
+    ClientLoadBreaker breaker = breaker();
+    breaker.onFailure("a");
+    breaker.onSuccess("a");
+    breaker.onFailure("a");
+    assertThat(breaker.isOpen("a"), is(false));
+  }
+
+  @Test
+  public void halfOpenProbe() {
+    ClientLoadBreaker breaker = breaker();
+    breaker.onFailure("a");
+    breaker.onFailure("a");
+    now += TimeUnit.SECONDS.toNanos(29);
+    assertThrows(ClientLoadBreaker.OpenException.class, () -> breaker.acquire("a"));
+    now += TimeUnit.SECONDS.toNanos(1);
+    breaker.acquire("a");
+    // a single probe only
+    assertThrows(ClientLoadBreaker.OpenException.class, () -> breaker.acquire("a"));
+    breaker.onFailure("a");
+    assertThrows(ClientLoadBreaker.OpenException.class, () -> breaker.acquire("a"));
+    now += TimeUnit.SECONDS.toNanos(30);
+    breaker.acquire("a");
+    breaker.onSuccess("a");
+    assertThat(breaker.isOpen("a"), is(false));
+    breaker.acquire("a");
+  }
+
+  @Test
+  public void retryAfter() {
+    ClientLoadBreaker breaker = breaker();
+    assertThat(breaker.getRetryAfter("a"), is(0L));
+    breaker.onFailure("a");
+    breaker.onFailure("a");
+    assertThat(breaker.getRetryAfter("a"), is(30L));
+    now += TimeUnit.MILLISECONDS.toNanos(10500);
+    assertThat(breaker.getRetryAfter("a"), is(20L));
+    var e = assertThrows(ClientLoadBreaker.OpenException.class, () -> breaker.acquire("a"));
+    assertThat(e.getRetryAfter(), is(20L));
+    now += TimeUnit.SECONDS.toNanos(20);
+    breaker.acquire("a");
+    // probe running
+    assertThat(breaker.getRetryAfter("a"), is(1L));
+    breaker.onSuccess("a");
+    assertThat(breaker.getRetryAfter("a"), is(0L));
+  }
+
+  @Test
+  public void reset() {
+    ClientLoadBreaker breaker = breaker();
+    breaker.onFailure("a");
+    breaker.onFailure("a");
+    breaker.reset("a");
+    breaker.acquire("a");
+    assertThat(breaker.isOpen("a"), is(false));
+  }
+
+  @Test
+  public void disabled() {
+    ClientLoadBreaker breaker = breaker();
+    breaker.setThreshold("0");
+    breaker.onFailure("a");
+    breaker.onFailure("a");
+    breaker.acquire("a");
+    assertThat(breaker.isOpen("a"), is(false));
+  }
+
+  @Test
+  public void badValues() {
+    ClientLoadBreaker breaker = breaker();
+    breaker.setThreshold(null);
+    breaker.setRetryInterval(null);
+    assertThrows(NumberFormatException.class, () -> breaker.setThreshold("x"));
+    assertThrows(NumberFormatException.class, () -> breaker.setThreshold("-1"));
+    assertThrows(NumberFormatException.class, () -> breaker.setRetryInterval("1.5"));
+  }
+}
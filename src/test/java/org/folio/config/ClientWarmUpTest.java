@@ -0,0 +1,72 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.List;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.pac4j.saml.client.SAML2Client;
+
+@RunWith(VertxUnitRunner.class)
+public class ClientWarmUpTest {
+
+  private static final String TENANT = "warmuptenant";
+
+  private Vertx vertx;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown(TestContext context) {
+    ClientWarmUp.setConcurrency(null);
+    ClientWarmUp.setReadiness(null);
+    SamlConfigHolder.getInstance().removeClient(TENANT);
+    vertx.close().onComplete(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void loadedClientIsKept(TestContext context) {
+    SamlClientComposite composite = new SamlClientComposite(mock(SAML2Client.class), new SamlConfiguration());
+    SamlConfigHolder.getInstance().putClient(TENANT, composite);
+    ClientWarmUp.warmUp(vertx.getOrCreateContext(), List.of(TENANT, TENANT, TENANT))
+      .onComplete(context.asyncAssertSuccess(x ->
+          assertThat(SamlConfigHolder.getInstance().findClient(TENANT), is(composite))));
+  }
+
+  @Test
+  public void disabled(TestContext context) {
+    ClientWarmUp.setConcurrency("0");
+    ClientWarmUp.start(vertx.getOrCreateContext())
+      .compose(x -> ClientWarmUp.warmUp(vertx.getOrCreateContext(), List.of(TENANT)))
+      .onComplete(context.asyncAssertSuccess(x ->
+          assertThat(SamlConfigHolder.getInstance().findClient(TENANT), is((SamlClientComposite) null))));
+  }
+
+  @Test
+  public void concurrencyBadValue() {
+    assertThrows(NumberFormatException.class, () -> ClientWarmUp.setConcurrency("-1"));
+    assertThrows(NumberFormatException.class, () -> ClientWarmUp.setConcurrency("x"));
+  }
+
+  @Test
+  public void readiness() {
+    ClientWarmUp.setReadiness("true");
+    assertThat(ClientWarmUp.isReadiness(), is(true));
+    ClientWarmUp.setReadiness("false");
+    assertThat(ClientWarmUp.isReadiness(), is(false));
+    assertThrows(IllegalArgumentException.class, () -> ClientWarmUp.setReadiness("yes"));
+  }
+}
@@ -0,0 +1,61 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import org.junit.Test;
+import org.opensaml.storage.ReplayCache;
+import org.pac4j.saml.exceptions.SAMLReplayException;
+
+public class DistributedReplayCacheTest {
+
+  private long now = 1000000;
+
+  @Test
+  public void nearCache() {
+    DistributedReplayCache cache = new DistributedReplayCache(() -> now);
+    ReplayCache a = cache.provider("a").get();
+    ReplayCache b = cache.provider("b").get();
+    Instant expires = Instant.ofEpochMilli(now + 5000);
+
+    assertThat(a.check("ctx", "id1", expires), is(true));
+    assertThat(a.check("ctx", "id1", expires), is(false));
+    assertThat(a.check("ctx", "id2", expires), is(true));
+    assertThat(a.check("other", "id1", expires), is(true));
+    assertThat(b.check("ctx", "id1", expires), is(true));
+
+    now += 5000;
+    assertThat(a.check("ctx", "id1", Instant.ofEpochMilli(now + 5000)), is(true));
+  }
+
+  @Test
+  public void invalidateAll() {
+    DistributedReplayCache cache = new DistributedReplayCache(() -> now);
+    ReplayCache a = cache.provider("a").get();
+    Instant expires = Instant.ofEpochMilli(now + 5000);
+    assertThat(a.check("ctx", "id", expires), is(true));
+    cache.invalidateAll();
+    assertThat(a.check("ctx", "id", expires), is(true));
+  }
+
+  @Test
+  public void parseResponse() {
+    String xml = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" ID=\"_r1\""
+        + " IssueInstant=\"2024-01-01T00:00:00Z\"><x/></samlp:Response>";
+    String samlResponse = Base64.getEncoder().encodeToString(xml.getBytes(StandardCharsets.UTF_8));
+    DistributedReplayCache.Check check = DistributedReplayCache.parseResponse(samlResponse, 120);
+    assertThat(check.getExpires(), is(Instant.parse("2024-01-01T00:02:00Z")));
+  }
+
+  @Test
+  public void parseResponseWithoutId() {
+    String samlResponse = Base64.getEncoder().encodeToString("<Response/>".getBytes(StandardCharsets.UTF_8));
+    assertThrows(SAMLReplayException.class, () -> DistributedReplayCache.parseResponse(samlResponse, 120));
+    assertThrows(SAMLReplayException.class, () -> DistributedReplayCache.parseResponse("saml-response", 120));
+    assertThrows(SAMLReplayException.class, () -> DistributedReplayCache.parseResponse(null, 120));
+  }
+}
@@ -0,0 +1,209 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.io.ByteArrayInputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.folio.config.FederationMetadataStore.FederationMetadataException;
+import org.folio.config.model.IdpMetadata;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+@RunWith(VertxUnitRunner.class)
+public class FederationMetadataStoreTest {
+
+  private static final String URL = "https://federation.example.org/metadata.xml";
+  private static final String DS_NS = "http://www.w3.org/2000/09/xmldsig#";
+
+  private static Vertx vertx = Vertx.vertx();
+
+  @After
+  public void tearDown() {
+    FederationMetadataStore.getInstance().clear();
+  }
+
+  @AfterClass
+  public static void afterOnce(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  static String aggregate(int entities) {
+    StringBuilder xml = new StringBuilder(entities * 700)
+        .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<md:EntitiesDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\"")
+        .append(" xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\"")
+        .append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"")
+        .append(" xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" Name=\"urn:example:federation\">\n");
+    for (int i = 0; i < entities; i++) {
+      xml.append("  <md:EntityDescriptor entityID=\"https://idp").append(i).append(".example.org/idp\">\n")
+          .append("    <md:IDPSSODescriptor protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\">\n")
+          .append("      <md:KeyDescriptor use=\"signing\"><ds:KeyInfo><ds:X509Data><ds:X509Certificate>")
+          .append("MIIEYzCCAkugAwIBAgIDIAZmMA0GCSqGSIb3DQEBCwUAMC4xCzAJBgNVBAYTAkRF").append(i)
+          .append("</ds:X509Certificate></ds:X509Data></ds:KeyInfo></md:KeyDescriptor>\n")
+          .append("      <md:Extensions><md:Attr xsi:type=\"xs:string\">x &amp; y</md:Attr></md:Extensions>\n")
+          .append("      <md:SingleSignOnService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\"")
+          .append(" Location=\"https://idp").append(i).append(".example.org/sso\"/>\n")
+          .append("    </md:IDPSSODescriptor>\n")
+          .append("  </md:EntityDescriptor>\n");
+    }
+    return xml.append("</md:EntitiesDescriptor>\n").toString();
+  }
+
+  private static Document parse(Buffer xml) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml.getBytes()));
+  }
+
+  @Test
+  public void notAggregate(TestContext context) {
+    var idpMetadata = new IdpMetadata(Buffer.buffer(
+        "<EntityDescriptor xmlns=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"x\"/>"), null, null);
+    assertThat(idpMetadata.isAggregate(), is(false));
+    FederationMetadataStore.getInstance().select(vertx, URL, idpMetadata, null)
+      .onComplete(context.asyncAssertSuccess(selected -> assertThat(selected, is(sameInstance(idpMetadata)))));
+  }
+
+  @Test
+  public void selectOnlyIdp(TestContext context) {
+    // an SP before the IdP, pac4j would take the first EntityDescriptor
+    String xml = aggregate(1).replace("  <md:EntityDescriptor",
+        "  <md:EntityDescriptor entityID=\"https://sp.example.org/sp\">"
+        + "<md:SPSSODescriptor protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\"/>"
+        + "</md:EntityDescriptor>\n  <md:EntityDescriptor");
+    var idpMetadata = new IdpMetadata(Buffer.buffer(xml), "\"1\"", null);
+    assertThat(idpMetadata.isAggregate(), is(true));
+    FederationMetadataStore.getInstance().select(vertx, URL, idpMetadata, null)
+      .onComplete(context.asyncAssertSuccess(selected -> {
+        assertThat(selected.isAggregate(), is(false));
+        assertThat(selected.getHash(), is(idpMetadata.getHash()));
+        assertThat(selected.getEtag(), is("\"1\""));
+        assertThat(selected.getAggregateUrl(), is(URL));
+        assertThat(selected.getBody().toString(), containsString("https://idp0.example.org/sso"));
+      }));
+  }
+
+  @Test
+  public void selectAmbiguous(TestContext context) {
+    var idpMetadata = new IdpMetadata(Buffer.buffer(aggregate(3)), null, null);
+    FederationMetadataStore.getInstance().select(vertx, URL, idpMetadata, null)
+      .onComplete(context.asyncAssertFailure(e -> {
+        assertThat(e instanceof FederationMetadataException, is(true));
+        assertThat(e.getMessage(), containsString("contains 3 IdPs"));
+      }));
+  }
+
+  @Test
+  public void indexDroppedWithLastReference(TestContext context) {
+    var store = FederationMetadataStore.getInstance();
+    var idpMetadata = new IdpMetadata(Buffer.buffer(aggregate(3)), null, null);
+    assertThat(store.acquire(URL), is(false));
+    store.select(vertx, URL, idpMetadata, "https://idp1.example.org/idp")
+      .onComplete(context.asyncAssertSuccess(selected -> {
+        assertThat(store.acquire(URL), is(true));
+        assertThat(store.acquire(URL), is(true));
+        store.release(URL);
+        assertThat(store.size(), is(1));
+        store.release(URL);
+        assertThat(store.size(), is(0));
+      }));
+  }
+
+  @Test
+  public void indexDroppedAfterFailedSelect(TestContext context) {
+    var store = FederationMetadataStore.getInstance();
+    var idpMetadata = new IdpMetadata(Buffer.buffer(aggregate(3)), null, null);
+    store.select(vertx, URL, idpMetadata, "https://unknown.example.org")
+      .recover(e -> {
+        assertThat(store.size(), is(0));
+        return store.select(vertx, URL, idpMetadata, null);
+      })
+      .onComplete(context.asyncAssertFailure(e -> {
+        assertThat(e.getMessage(), containsString("contains 3 IdPs"));
+        assertThat(store.size(), is(0));
+      }));
+  }
+
+  @Test
+  public void unreferencedIndexDropped(TestContext context) {
+    var store = FederationMetadataStore.getInstance();
+    var idpMetadata = new IdpMetadata(Buffer.buffer(aggregate(3)), null, null);
+    store.select(vertx, URL, idpMetadata, "https://idp1.example.org/idp")
+      .onComplete(context.asyncAssertSuccess(selected -> {
+        assertThat(store.acquire(URL), is(true));
+        store.dropUnreferenced(URL);
+        assertThat(store.size(), is(1));
+        store.release(URL);
+        assertThat(store.size(), is(0));
+        // like a client that could not be built from the selected entity
+        store.index(vertx, URL, idpMetadata);
+        store.dropUnreferenced(URL);
+        assertThat(store.size(), is(0));
+      }));
+  }
+
+  @Test
+  public void selectedEntityIsStandalone(TestContext context) {
+    var idpMetadata = new IdpMetadata(Buffer.buffer(aggregate(3)), null, null);
+    FederationMetadataStore.getInstance().select(vertx, URL, idpMetadata, "https://idp2.example.org/idp")
+      .onComplete(context.asyncAssertSuccess(selected -> {
+        try {
+          Element root = parse(selected.getBody()).getDocumentElement();
+          assertThat(root.getLocalName(), is("EntityDescriptor"));
+          assertThat(root.getNamespaceURI(), is(FederationMetadataStore.METADATA_NS));
+          assertThat(root.getAttribute("entityID"), is("https://idp2.example.org/idp"));
+          var certificate = root.getElementsByTagNameNS(DS_NS, "X509Certificate").item(0);
+          assertThat(certificate.getTextContent(), containsString("BAYTAkRF2"));
+          // prefix used in an attribute value only
+          assertThat(root.lookupNamespaceURI("xs"), is("http://www.w3.org/2001/XMLSchema"));
+          assertThat(root.getElementsByTagNameNS(FederationMetadataStore.METADATA_NS, "Attr").item(0)
+              .getTextContent(), is("x & y"));
+        } catch (Exception e) {
+          context.fail(e);
+        }
+      }));
+  }
+
+  @Test
+  public void unknownEntity(TestContext context) {
+    var idpMetadata = new IdpMetadata(Buffer.buffer(aggregate(3)), null, null);
+    FederationMetadataStore.getInstance().select(vertx, URL, idpMetadata, "https://unknown.example.org")
+      .onComplete(context.asyncAssertFailure(e -> {
+        assertThat(e instanceof FederationMetadataException, is(true));
+        assertThat(e.getMessage(), containsString("https://unknown.example.org"));
+      }));
+  }
+
+  @Test
+  public void parsedOncePerContent(TestContext context) {
+    var store = FederationMetadataStore.getInstance();
+    var idpMetadata = new IdpMetadata(Buffer.buffer(aggregate(3)), null, null);
+    var first = store.index(vertx, URL, idpMetadata);
+    var second = store.index(vertx, URL, new IdpMetadata(Buffer.buffer(aggregate(3)), "\"2\"", null));
+    assertThat(second, is(sameInstance(first)));
+    var changed = store.index(vertx, URL, new IdpMetadata(Buffer.buffer(aggregate(4)), null, null));
+    changed.onComplete(context.asyncAssertSuccess(index -> assertThat(index.getEntities().size(), is(4))));
+  }
+
+  /**
+   * Index of a 20k entity aggregate; time and retained heap compared to a DOM are measured by
+   * FederationIndexBenchmark of the jmh profile.
+   */
+  @Test
+  public void index20kEntities() throws Exception {
+    var index = FederationMetadataStore.parse(aggregate(20000).getBytes());
+    assertThat(index.getEntities().size(), is(20000));
+    assertThat(index.getIdpEntityIds().get(0), is("https://idp0.example.org/idp"));
+  }
+}
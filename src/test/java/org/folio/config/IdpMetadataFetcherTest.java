@@ -0,0 +1,177 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.folio.config.IdpMetadataFetcher.IdpMetadataFetchException;
+import org.folio.config.model.IdpMetadata;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.rest.tools.utils.NetworkUtils;
+import org.folio.util.IdpMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class IdpMetadataFetcherTest {
+
+  private static final int MOCK_PORT = NetworkUtils.nextFreePort();
+  private static final String IDP_URL = "http://localhost:" + MOCK_PORT;
+  private static final long MAX_EVENT_LOOP_EXECUTE_MILLIS = 500;
+
+  private static Vertx mockVertx = Vertx.vertx();
+
+  /** blocked-thread detection with a low limit: blocking the event loop is logged as a warning */
+  private static Vertx vertx = Vertx.vertx(new VertxOptions()
+      .setBlockedThreadCheckInterval(50)
+      .setBlockedThreadCheckIntervalUnit(TimeUnit.MILLISECONDS)
+      .setMaxEventLoopExecuteTime(MAX_EVENT_LOOP_EXECUTE_MILLIS)
+      .setMaxEventLoopExecuteTimeUnit(TimeUnit.MILLISECONDS));
+
+  /** warnings of Vert.x's blocked thread checker, for example "Thread ... has been blocked for 612 ms" */
+  private static final List<String> blockedThreadWarnings = new CopyOnWriteArrayList<>();
+  private static final Appender blockedThreadAppender =
+      new AbstractAppender("BlockedThreadChecker", null, null, true, Property.EMPTY_ARRAY) {
+        @Override
+        public void append(LogEvent event) {
+          blockedThreadWarnings.add(event.getMessage().getFormattedMessage());
+        }
+      };
+
+  @BeforeClass
+  public static void setupOnce(TestContext context) {
+    blockedThreadAppender.start();
+    blockedThreadLogger().addAppender(blockedThreadAppender);
+
+    DeploymentOptions mockOptions = new DeploymentOptions().setConfig(new JsonObject()
+        .put("http.port", MOCK_PORT));
+
+    mockVertx.deployVerticle(IdpMock.class.getName(), mockOptions, context.asyncAssertSuccess());
+  }
+
+  @AfterClass
+  public static void afterOnce(TestContext context) {
+    blockedThreadLogger().removeAppender(blockedThreadAppender);
+    blockedThreadAppender.stop();
+    vertx.close(context.asyncAssertSuccess());
+    mockVertx.close(context.asyncAssertSuccess());
+  }
+
+  private static org.apache.logging.log4j.core.Logger blockedThreadLogger() {
+    return (org.apache.logging.log4j.core.Logger) LogManager.getLogger("io.vertx.core.impl.BlockedThreadChecker");
+  }
+
+  @Test
+  public void fetch(TestContext context) {
+    IdpMetadataFetcher.fetch(vertx, IDP_URL + "/xml", null)
+      .onComplete(context.asyncAssertSuccess(idpMetadata ->
+        assertThat(idpMetadata.getBody().toString(), containsString("EntityDescriptor"))));
+  }
+
+  @Test
+  public void fetchNotFound(TestContext context) {
+    IdpMetadataFetcher.fetch(vertx, IDP_URL + "/notfound", null)
+      .onComplete(context.asyncAssertFailure(e -> {
+        assertThat(e instanceof IdpMetadataFetchException, is(true));
+        assertThat(e.getMessage(), containsString("404"));
+      }));
+  }
+
+  @Test
+  public void conditionalGet(TestContext context) {
+    IdpMetadataFetcher.fetch(vertx, IDP_URL + "/etag", null)
+      .compose(first -> {
+        assertThat(first.getEtag(), is(IdpMock.ETAG));
+        assertThat(first.getLastModified(), is(IdpMock.LAST_MODIFIED));
+        return IdpMetadataFetcher.fetch(vertx, IDP_URL + "/etag", first)
+          .map(second -> {
+            assertThat(second, is(sameInstance(first)));
+            return first;
+          });
+      })
+      .compose(first -> {
+        var stale = new IdpMetadata(first.getBody(), "\"other\"", null);
+        return IdpMetadataFetcher.fetch(vertx, IDP_URL + "/etag", stale)
+          .map(third -> {
+            assertThat(third, is(not(sameInstance(stale))));
+            assertThat(third.getHash(), is(first.getHash()));
+            return third;
+          });
+      })
+      .onComplete(context.asyncAssertSuccess());
+  }
+
+  @Test
+  public void inlineMetadataIsNotFetched(TestContext context) {
+    SamlClientLoader.loadIdpMetadata(vertx, IDP_URL + "/notfound", "<EntityDescriptor/>", null)
+      .onComplete(context.asyncAssertSuccess(idpMetadata ->
+        assertThat(idpMetadata.getBody().toString(), is("<EntityDescriptor/>"))));
+  }
+
+  /**
+   * A slow IdP must not block the event loop: fetching, indexing and parsing the metadata and
+   * initializing the client must not trigger a warning of Vert.x's blocked thread checker.
+   */
+  @Test
+  public void slowIdpDoesNotBlockEventLoop(TestContext context) {
+    long start = System.nanoTime();
+    loadClient(IDP_URL + "/slow")
+      .onComplete(context.asyncAssertSuccess(x -> {
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+            greaterThanOrEqualTo(IdpMock.SLOW_MILLIS));
+        assertThat(blockedThreadWarnings, is(empty()));
+      }));
+  }
+
+  @Test
+  public void largeIdpMetadataDoesNotBlockEventLoop(TestContext context) {
+    loadClient(IDP_URL + "/large")
+      .onComplete(context.asyncAssertSuccess(x -> assertThat(blockedThreadWarnings, is(empty()))));
+  }
+
+  private Future<Void> loadClient(String idpUrl) {
+    var samlConfiguration = new SamlConfiguration();
+    samlConfiguration.setIdpUrl(idpUrl);
+    samlConfiguration.setOkapiUrl("http://localhost:9130");
+    samlConfiguration.setKeystorePassword("ks");
+    samlConfiguration.setPrivateKeyPassword("pk");
+    samlConfiguration.setKeystore(Base64.getEncoder().encodeToString(
+        KeystoreGenerator.keystore(KeystoreGenerator.generateKeyPair(), "ks", "pk")));
+    Context vertxContext = vertx.getOrCreateContext();
+    Promise<Void> promise = Promise.promise();
+    blockedThreadWarnings.clear();
+    vertxContext.runOnContext(run ->
+      SamlClientLoader.loadIdpMetadata(vertx, idpUrl, null, null)
+        .compose(idpMetadata -> SamlClientLoader.createClient(vertxContext, "diku", samlConfiguration, idpMetadata))
+        .<Void>map(client -> {
+          client.release();
+          return null;
+        })
+        .onComplete(promise));
+    return promise.future();
+  }
+}
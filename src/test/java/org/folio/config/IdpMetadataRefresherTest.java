@@ -0,0 +1,112 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import io.vertx.core.Context;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.time.Instant;
+import org.folio.config.model.IdpMetadata;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.rest.tools.utils.NetworkUtils;
+import org.folio.util.IdpMock;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.pac4j.saml.client.SAML2Client;
+
+@RunWith(VertxUnitRunner.class)
+public class IdpMetadataRefresherTest {
+
+  private static final String TENANT = "refreshertenant";
+  private static final int MOCK_PORT = NetworkUtils.nextFreePort();
+  private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+  private static Vertx vertx = Vertx.vertx();
+
+  @BeforeClass
+  public static void setupOnce(TestContext context) {
+    DeploymentOptions mockOptions = new DeploymentOptions().setConfig(new JsonObject()
+        .put("http.port", MOCK_PORT));
+
+    vertx.deployVerticle(IdpMock.class.getName(), mockOptions, context.asyncAssertSuccess());
+  }
+
+  @AfterClass
+  public static void afterOnce(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  @After
+  public void tearDown() {
+    IdpMetadataRefresher.setRefreshInterval(null);
+    SamlConfigHolder.getInstance().removeClient(TENANT);
+  }
+
+  private static IdpMetadata idpMetadata(String rootAttributes) {
+    return new IdpMetadata(Buffer.buffer("<?xml version=\"1.0\"?>\n"
+        + "<EntityDescriptor xmlns=\"urn:oasis:names:tc:SAML:2.0:metadata\" entityID=\"x\" "
+        + rootAttributes + "/>"), null, null);
+  }
+
+  @Test
+  public void delayIsRefreshInterval() {
+    assertThat(IdpMetadataRefresher.delayMillis(idpMetadata(""), NOW), is(3600_000L));
+    IdpMetadataRefresher.setRefreshInterval("120");
+    assertThat(IdpMetadataRefresher.delayMillis(idpMetadata(""), NOW), is(120_000L));
+  }
+
+  @Test
+  public void delayHonorsCacheDuration() {
+    assertThat(IdpMetadataRefresher.delayMillis(idpMetadata("cacheDuration=\"PT10M\""), NOW), is(600_000L));
+    assertThat(IdpMetadataRefresher.delayMillis(idpMetadata("cacheDuration=\"P1D\""), NOW), is(3600_000L));
+  }
+
+  @Test
+  public void delayHonorsValidUntil() {
+    assertThat(IdpMetadataRefresher.delayMillis(
+        idpMetadata("validUntil=\"2024-01-01T00:15:00Z\""), NOW), is(900_000L));
+    // expired: not below the minimum
+    assertThat(IdpMetadataRefresher.delayMillis(
+        idpMetadata("validUntil=\"2023-12-31T00:00:00Z\""), NOW), is(60_000L));
+  }
+
+  @Test
+  public void setRefreshIntervalException() {
+    var e = assertThrows(NumberFormatException.class,
+        () -> IdpMetadataRefresher.setRefreshInterval("foo"));
+    assertThat(e.getMessage(), is("Bad value of environmental variable IDP_METADATA_REFRESH_INTERVAL: \"foo\""));
+  }
+
+  @Test
+  public void unchangedMetadataKeepsClient(TestContext context) {
+    Context vertxContext = vertx.getOrCreateContext();
+    String idpUrl = "http://localhost:" + MOCK_PORT + "/etag";
+    var samlConfiguration = new SamlConfiguration();
+    samlConfiguration.setIdpUrl(idpUrl);
+
+    IdpMetadataFetcher.fetch(vertx, idpUrl, null)
+      .compose(idpMetadata -> {
+        var clientComposite = new SamlClientComposite(mock(SAML2Client.class), samlConfiguration, idpMetadata);
+        SamlConfigHolder.getInstance().putClient(TENANT, clientComposite);
+        return IdpMetadataRefresher.refresh(vertxContext, TENANT, clientComposite, idpMetadata)
+          .map(refreshed -> {
+            assertThat(refreshed, is(sameInstance(idpMetadata)));
+            assertThat(SamlConfigHolder.getInstance().findClient(TENANT), is(sameInstance(clientComposite)));
+            return null;
+          });
+      })
+      .onComplete(context.asyncAssertSuccess());
+  }
+}
@@ -0,0 +1,52 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.Test;
+
+public class KeystoreCredentialCacheTest {
+
+  private static String base64(String s) {
+    return Base64.getEncoder().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void decodesOnce() {
+    KeystoreCredentialCache cache = new KeystoreCredentialCache(10);
+    KeystoreCredentialCache.Entry entry = cache.get(base64("ks"), "a", "b");
+    assertThat(new String(entry.getKeystore(), StandardCharsets.UTF_8), is("ks"));
+    assertThat(entry.isResolved(), is(false));
+    assertThat(cache.get(base64("ks"), "a", "b"), is(sameInstance(entry)));
+    assertThat(cache.getHits(), is(1L));
+    assertThat(cache.getMisses(), is(1L));
+  }
+
+  @Test
+  public void passwordsArePartOfTheKey() {
+    KeystoreCredentialCache cache = new KeystoreCredentialCache(10);
+    KeystoreCredentialCache.Entry entry = cache.get(base64("ks"), "a", "b");
+    assertThat(cache.get(base64("ks"), "a", "c"), is(not(sameInstance(entry))));
+    assertThat(cache.get(base64("ks"), "c", "b"), is(not(sameInstance(entry))));
+    assertThat(cache.size(), is(3));
+    assertThat(KeystoreCredentialCache.key("ks", "a", "b"), is(not(KeystoreCredentialCache.key("ks", "ab", ""))));
+  }
+
+  @Test
+  public void leastRecentlyUsedIsDropped() {
+    KeystoreCredentialCache cache = new KeystoreCredentialCache(2);
+    KeystoreCredentialCache.Entry one = cache.get(base64("1"), "p", "p");
+    cache.get(base64("2"), "p", "p");
+    cache.get(base64("1"), "p", "p");
+    cache.get(base64("3"), "p", "p");
+    assertThat(cache.size(), is(2));
+    assertThat(cache.get(base64("1"), "p", "p"), is(sameInstance(one)));
+    assertThat(cache.getMisses(), is(3L));
+    cache.get(base64("2"), "p", "p");
+    assertThat(cache.getMisses(), is(4L));
+    cache.invalidateAll();
+    assertThat(cache.size(), is(0));
+  }
+}
@@ -0,0 +1,93 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThrows;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.io.ByteArrayInputStream;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class KeystoreGeneratorTest {
+
+  private static final KeyPair KEY_PAIR = KeystoreGenerator.generateKeyPair();
+
+  private Vertx vertx;
+  private final AtomicInteger generated = new AtomicInteger();
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown(TestContext context) {
+    vertx.close().onComplete(context.asyncAssertSuccess());
+  }
+
+  private KeyPair keyPair() {
+    generated.incrementAndGet();
+    return KEY_PAIR;
+  }
+
+  @Test
+  public void keystore() throws Exception {
+    byte[] bytes = KeystoreGenerator.keystore(KEY_PAIR, "ks-pw", "pk-pw");
+    KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keyStore.load(new ByteArrayInputStream(bytes), "ks-pw".toCharArray());
+    assertThat(keyStore.getKey(KeystoreGenerator.ALIAS, "pk-pw".toCharArray()), is(KEY_PAIR.getPrivate()));
+    var certificate = (X509Certificate) keyStore.getCertificate(KeystoreGenerator.ALIAS);
+    assertThat(certificate.getPublicKey(), is(KEY_PAIR.getPublic()));
+    certificate.verify(KEY_PAIR.getPublic());
+    certificate.checkValidity();
+  }
+
+  @Test
+  public void pool(TestContext context) {
+    KeystoreGenerator generator = new KeystoreGenerator(this::keyPair);
+    generator.setPoolSize("1");
+    generator.fill(vertx);
+    generator.fill(vertx);
+    vertx.setTimer(100, x -> {
+      assertThat(generator.size(), is(1));
+      assertThat(generated.get(), is(1));
+      generator.generate(vertx, "a", "b")
+        .onComplete(context.asyncAssertSuccess(bytes -> {
+          assertThat(bytes, is(notNullValue()));
+          assertThat(generator.getHits(), is(1L));
+          assertThat(generator.getMisses(), is(0L));
+        }));
+    });
+  }
+
+  @Test
+  public void poolDisabled(TestContext context) {
+    KeystoreGenerator generator = new KeystoreGenerator(this::keyPair);
+    generator.setPoolSize("0");
+    generator.fill(vertx);
+    generator.generate(vertx, "a", "b")
+      .onComplete(context.asyncAssertSuccess(bytes -> {
+        assertThat(generated.get(), is(1));
+        assertThat(generator.size(), is(0));
+        assertThat(generator.getMisses(), is(1L));
+      }));
+  }
+
+  @Test
+  public void poolSizeBadValue() {
+    KeystoreGenerator generator = new KeystoreGenerator(this::keyPair);
+    assertThrows(NumberFormatException.class, () -> generator.setPoolSize("-1"));
+    assertThrows(NumberFormatException.class, () -> generator.setPoolSize("x"));
+  }
+}
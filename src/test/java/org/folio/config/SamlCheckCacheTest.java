@@ -0,0 +1,57 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class SamlCheckCacheTest {
+
+  private long now;
+
+  @Test
+  public void negativeExpires() {
+    SamlCheckCache cache = new SamlCheckCache(() -> now);
+    cache.setNegativeTtl("60");
+    assertThat(cache.isInactive("a"), is(false));
+    cache.put("a", false);
+    assertThat(cache.isInactive("a"), is(true));
+    assertThat(cache.isInactive("b"), is(false));
+    now += TimeUnit.SECONDS.toNanos(59);
+    assertThat(cache.isInactive("a"), is(true));
+    now += TimeUnit.SECONDS.toNanos(1);
+    assertThat(cache.isInactive("a"), is(false));
+    assertThat(cache.getHits(), is(2L));
+    assertThat(cache.getMisses(), is(3L));
+  }
+
+  @Test
+  public void activeAndInvalidateDropNegative() {
+    SamlCheckCache cache = new SamlCheckCache(() -> now);
+    cache.put("a", false);
+    cache.put("a", true);
+    assertThat(cache.isInactive("a"), is(false));
+    cache.put("a", false);
+    cache.invalidate("a");
+    assertThat(cache.isInactive("a"), is(false));
+    assertThat(cache.isInactive(null), is(false));
+  }
+
+  @Test
+  public void disabled() {
+    SamlCheckCache cache = new SamlCheckCache(() -> now);
+    cache.setNegativeTtl("0");
+    cache.put("a", false);
+    assertThat(cache.isInactive("a"), is(false));
+  }
+
+  @Test
+  public void badValue() {
+    SamlCheckCache cache = new SamlCheckCache(() -> now);
+    cache.setNegativeTtl(null);
+    assertThrows(NumberFormatException.class, () -> cache.setNegativeTtl("1m"));
+    assertThrows(NumberFormatException.class, () -> cache.setNegativeTtl("-1"));
+  }
+}
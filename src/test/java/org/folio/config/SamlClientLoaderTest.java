@@ -3,10 +3,21 @@ package org.folio.config;
 import static org.folio.config.SamlClientLoader.DEFAULT_MAXIMUM_AUTHENTICATION_LIFETIME;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThrows;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import org.folio.config.model.IdpMetadata;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -57,4 +68,43 @@ public class SamlClientLoaderTest {
         () -> SamlClientLoader.setMaximumAuthenticationLifetime("foo"));
     assertThat(e.getMessage(), is("Bad value of environmental variable MAX_AUTH_LIFETIME: \"foo\""));
   }
+
+  private static SamlConfiguration samlConfiguration() {
+    var samlConfiguration = new SamlConfiguration();
+    samlConfiguration.setIdpUrl("http://localhost/idp");
+    samlConfiguration.setOkapiUrl("http://localhost:9130");
+    samlConfiguration.setKeystorePassword("ks");
+    samlConfiguration.setPrivateKeyPassword("pk");
+    samlConfiguration.setKeystore(Base64.getEncoder().encodeToString(
+        KeystoreGenerator.keystore(KeystoreGenerator.generateKeyPair(), "ks", "pk")));
+    return samlConfiguration;
+  }
+
+  @Test
+  public void tenantsShareIdpMetadataResolver(TestContext context) throws Exception {
+    Vertx vertx = Vertx.vertx();
+    Context vertxContext = vertx.getOrCreateContext();
+    byte[] metadata = Files.readAllBytes(Path.of("src/test/resources/meta-idp.xml"));
+    String hash = SharedContent.sha256(metadata);
+    String key = hash + "/" + hash;
+
+    Future.all(
+        SamlClientLoader.createClient(vertxContext, "tenant1", samlConfiguration(),
+            new IdpMetadata(Buffer.buffer(metadata), null, null)),
+        SamlClientLoader.createClient(vertxContext, "tenant2", samlConfiguration(),
+            new IdpMetadata(Buffer.buffer(metadata), null, null)))
+      .onComplete(context.asyncAssertSuccess(all -> {
+        SamlClientComposite first = all.resultAt(0);
+        SamlClientComposite second = all.resultAt(1);
+        assertThat(second.getClient().getConfiguration().getIdentityProviderMetadataResolver(),
+            is(sameInstance(first.getClient().getConfiguration().getIdentityProviderMetadataResolver())));
+        assertThat(second.getClient().getIdentityProviderMetadataResolver().resolve(),
+            is(sameInstance(first.getClient().getIdentityProviderMetadataResolver().resolve())));
+        assertThat(SamlClientLoader.SHARED_IDP_METADATA.references(key), is(2));
+        first.release();
+        second.release();
+        assertThat(SamlClientLoader.SHARED_IDP_METADATA.references(key), is(0));
+        vertx.close();
+      }));
+  }
 }
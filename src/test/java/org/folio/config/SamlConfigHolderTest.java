@@ -0,0 +1,260 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.folio.config.model.SamlClientComposite;
+import org.folio.config.model.SamlConfiguration;
+import org.folio.metrics.SamlMetrics;
+import org.junit.After;
+import org.junit.Test;
+import org.pac4j.saml.client.SAML2Client;
+
+public class SamlConfigHolderTest {
+
+  private static final String TENANT = "holdertenant";
+
+  private final SamlConfigHolder holder = SamlConfigHolder.getInstance();
+
+  @After
+  public void tearDown() {
+    holder.removeClient(TENANT);
+    ClientLoadBreaker.getInstance().reset(TENANT);
+  }
+
+  private static SamlClientComposite composite() {
+    return new SamlClientComposite(mock(SAML2Client.class), new SamlConfiguration());
+  }
+
+  @Test
+  public void concurrentLookupsShareOneLoad() {
+    AtomicInteger loads = new AtomicInteger();
+    Promise<SamlClientComposite> promise = Promise.promise();
+    long misses = holder.getMisses();
+    long coalesced = holder.getCoalesced();
+    long hits = holder.getHits();
+
+    var first = holder.findOrLoadClient(TENANT, () -> {
+      loads.incrementAndGet();
+      return promise.future();
+    });
+    var second = holder.findOrLoadClient(TENANT, () -> {
+      loads.incrementAndGet();
+      return promise.future();
+    });
+    assertThat(first.isComplete(), is(false));
+    assertThat(second.isComplete(), is(false));
+
+    var clientComposite = composite();
+    promise.complete(clientComposite);
+
+    assertThat(loads.get(), is(1));
+    assertThat(first.result(), is(sameInstance(clientComposite)));
+    assertThat(second.result(), is(sameInstance(clientComposite)));
+    assertThat(holder.findClient(TENANT), is(sameInstance(clientComposite)));
+
+    var third = holder.findOrLoadClient(TENANT, () -> Future.failedFuture("must not load"));
+    assertThat(third.result(), is(sameInstance(clientComposite)));
+
+    assertThat(holder.getMisses() - misses, is(1L));
+    assertThat(holder.getCoalesced() - coalesced, is(1L));
+    assertThat(holder.getHits() - hits, is(1L));
+  }
+
+  @Test
+  public void failedLoadIsNotCached() {
+    long loadFailures = holder.getLoadFailures();
+
+    var first = holder.findOrLoadClient(TENANT, () -> Future.failedFuture("broken"));
+    assertThat(first.cause().getMessage(), is("broken"));
+    assertThat(holder.findClient(TENANT), is(nullValue()));
+    assertThat(holder.getLoadFailures() - loadFailures, is(1L));
+
+    var clientComposite = composite();
+    var second = holder.findOrLoadClient(TENANT, () -> Future.succeededFuture(clientComposite));
+    assertThat(second.result(), is(sameInstance(clientComposite)));
+  }
+
+  @Test
+  public void repeatedlyFailingLoadsFailFast() {
+    AtomicInteger loads = new AtomicInteger();
+    for (int i = 0; i < ClientLoadBreaker.DEFAULT_THRESHOLD; i++) {
+      holder.findOrLoadClient(TENANT, () -> {
+        loads.incrementAndGet();
+        return Future.failedFuture("broken");
+      });
+    }
+    var rejected = holder.reloadClient(TENANT, () -> Future.failedFuture("must not load"));
+    assertThat(rejected.cause(), is(instanceOf(ClientLoadBreaker.OpenException.class)));
+    assertThat(loads.get(), is(ClientLoadBreaker.DEFAULT_THRESHOLD));
+
+    ClientLoadBreaker.getInstance().reset(TENANT);
+    var clientComposite = composite();
+    var result = holder.findOrLoadClient(TENANT, () -> Future.succeededFuture(clientComposite));
+    assertThat(result.result(), is(sameInstance(clientComposite)));
+  }
+
+  @Test
+  public void failedWarmUpIsNotCounted() {
+    for (int i = 0; i < ClientLoadBreaker.DEFAULT_THRESHOLD - 1; i++) {
+      holder.findOrLoadClient(TENANT, () -> Future.failedFuture("broken"));
+    }
+    for (int i = 0; i < ClientLoadBreaker.DEFAULT_THRESHOLD; i++) {
+      holder.warmUpClient(TENANT, () -> Future.failedFuture("broken"));
+    }
+    assertThat(ClientLoadBreaker.getInstance().isOpen(TENANT), is(false));
+
+    // the failures of the requests are kept
+    holder.findOrLoadClient(TENANT, () -> Future.failedFuture("broken"));
+    assertThat(ClientLoadBreaker.getInstance().isOpen(TENANT), is(true));
+  }
+
+  @Test
+  public void loaderExceptionIsRethrown() {
+    assertThrows(IllegalStateException.class, () -> holder.findOrLoadClient(TENANT, () -> {
+      throw new IllegalStateException("missing header");
+    }));
+
+    var clientComposite = composite();
+    var result = holder.findOrLoadClient(TENANT, () -> Future.succeededFuture(clientComposite));
+    assertThat(result.result(), is(sameInstance(clientComposite)));
+  }
+
+  @Test
+  public void reloadSupersedesLoadInFlight() {
+    Promise<SamlClientComposite> stale = Promise.promise();
+    var first = holder.findOrLoadClient(TENANT, stale::future);
+
+    var reloaded = composite();
+    var second = holder.reloadClient(TENANT, () -> Future.succeededFuture(reloaded));
+    assertThat(second.result(), is(sameInstance(reloaded)));
+
+    var staleComposite = composite();
+    stale.complete(staleComposite);
+    assertThat(first.result(), is(sameInstance(staleComposite)));
+    assertThat(holder.findClient(TENANT), is(sameInstance(reloaded)));
+  }
+
+  @Test
+  public void nullTenantIsNotCached() {
+    var clientComposite = composite();
+    var result = holder.findOrLoadClient(null, () -> Future.succeededFuture(clientComposite));
+    assertThat(result.result(), is(sameInstance(clientComposite)));
+    assertThat(holder.findClient(null), is(nullValue()));
+  }
+
+  @Test
+  public void removedClientIsReleased() {
+    AtomicInteger released = new AtomicInteger();
+    var first = composite().onRelease(released::incrementAndGet);
+    holder.putClient(TENANT, first);
+
+    var second = composite().onRelease(released::incrementAndGet);
+    assertThat(holder.replaceClient(TENANT, first, second), is(true));
+    assertThat(released.get(), is(1));
+    assertThat(holder.replaceClient(TENANT, first, composite()), is(false));
+
+    holder.reloadClient(TENANT, () -> Future.succeededFuture(composite()));
+    assertThat(released.get(), is(2));
+
+    // released once only
+    first.release();
+    second.release();
+    assertThat(released.get(), is(2));
+  }
+
+  @Test
+  public void leastRecentlyUsedEvicted() {
+    long[] now = { 0 };
+    var lruHolder = new SamlConfigHolder(() -> now[0]);
+    lruHolder.setMaxEntries("2");
+    var a = composite();
+    var b = composite();
+    lruHolder.putClient("a", a);
+    now[0]++;
+    lruHolder.putClient("b", b);
+    now[0]++;
+    lruHolder.findOrLoadClient("a", () -> Future.failedFuture("must not load"));
+    now[0]++;
+    lruHolder.putClient("c", composite());
+
+    assertThat(lruHolder.findClient("a"), is(sameInstance(a)));
+    assertThat(lruHolder.findClient("b"), is(nullValue()));
+    assertThat(lruHolder.getConfig().size(), is(2));
+    assertThat(lruHolder.getSizeEvictions(), is(1L));
+  }
+
+  @Test
+  public void sizeGaugeRemovedWithClient() {
+    long[] now = { 0 };
+    var gaugeHolder = new SamlConfigHolder(() -> now[0]);
+    gaugeHolder.setMaxEntries("1");
+    gaugeHolder.putClient("gauge-a", composite());
+    assertThat(sizeGauges("gauge-a"), is(1));
+
+    now[0]++;
+    gaugeHolder.putClient("gauge-b", composite());
+    assertThat(sizeGauges("gauge-a"), is(0));
+    assertThat(sizeGauges("gauge-b"), is(1));
+
+    gaugeHolder.removeClient("gauge-b");
+    assertThat(sizeGauges("gauge-b"), is(0));
+  }
+
+  private static int sizeGauges(String tenant) {
+    return SamlMetrics.getRegistry().find("saml.client.size").tag("tenant", tenant).gauges().size();
+  }
+
+  @Test
+  public void estimatedSizeEvictsButKeepsLastClient() {
+    long[] now = { 0 };
+    var sizeHolder = new SamlConfigHolder(() -> now[0]);
+    sizeHolder.setMaxBytes(Long.toString(SamlConfigHolder.CLIENT_BASE_SIZE));
+    sizeHolder.putClient("a", composite());
+    assertThat(sizeHolder.getEstimatedSize("a"), is(SamlConfigHolder.CLIENT_BASE_SIZE));
+    now[0]++;
+    var b = composite();
+    sizeHolder.putClient("b", b);
+    assertThat(sizeHolder.findClient("a"), is(nullValue()));
+    assertThat(sizeHolder.findClient("b"), is(sameInstance(b)));
+    assertThat(sizeHolder.getEstimatedSize(), is(SamlConfigHolder.CLIENT_BASE_SIZE));
+    assertThat(sizeHolder.getEstimatedSize("a"), is(0L));
+  }
+
+  @Test
+  public void idleEvicted() {
+    long[] now = { 0 };
+    var idleHolder = new SamlConfigHolder(() -> now[0]);
+    idleHolder.setIdleTtl("100");
+    AtomicInteger released = new AtomicInteger();
+    idleHolder.putClient("a", composite().onRelease(released::incrementAndGet));
+    var b = composite();
+    idleHolder.putClient("b", b);
+
+    now[0] += TimeUnit.SECONDS.toNanos(60);
+    idleHolder.findOrLoadClient("b", () -> Future.failedFuture("must not load"));
+    now[0] += TimeUnit.SECONDS.toNanos(60);
+    idleHolder.evictIdle();
+
+    assertThat(idleHolder.findClient("a"), is(nullValue()));
+    assertThat(idleHolder.findClient("b"), is(sameInstance(b)));
+    assertThat(released.get(), is(1));
+    assertThat(idleHolder.getIdleEvictions(), is(1L));
+  }
+
+  @Test
+  public void boundsBadValue() {
+    assertThrows(NumberFormatException.class, () -> holder.setMaxEntries("-1"));
+    assertThrows(NumberFormatException.class, () -> holder.setMaxBytes("1MB"));
+    assertThrows(NumberFormatException.class, () -> holder.setIdleTtl("x"));
+  }
+}
@@ -0,0 +1,28 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.folio.rest.jaxrs.model.SamlLogin;
+import org.junit.Test;
+
+public class SamlLoginActionTest {
+
+  @Test
+  public void carriesDto() {
+    SamlLogin samlLogin = new SamlLogin()
+        .withBindingMethod(SamlLogin.BindingMethod.POST)
+        .withLocation("https://idp.example.org/sso")
+        .withSamlRequest("PHNhbWxwOkF1dGhuUmVxdWVzdC8+")
+        .withRelayState("f47ac10b-58cc-4372-a567-0e02b2c3d479");
+    SamlLoginAction action = new SamlLoginAction(samlLogin);
+    assertThat(action.getCode(), is(200));
+    assertThat(action.getSamlLogin(), is(sameInstance(samlLogin)));
+    assertThat(new JsonObject(action.getContent()), is(JsonObject.mapFrom(samlLogin)));
+    assertThat(action.getContent(), is(sameInstance(action.getContent())));
+    assertThat(Json.decodeValue(action.getContent(), SamlLogin.class).getLocation(), is(samlLogin.getLocation()));
+  }
+}
@@ -0,0 +1,50 @@
+package org.folio.config;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class SharedContentTest {
+
+  @Test
+  public void acquireAndRelease() {
+    SharedContent<byte[]> sharedContent = new SharedContent<>();
+    AtomicInteger created = new AtomicInteger();
+    byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+    String key = SharedContent.sha256(content);
+
+    byte[] first = sharedContent.acquire(key, () -> {
+      created.incrementAndGet();
+      return content.clone();
+    });
+    byte[] second = sharedContent.acquire(key, () -> {
+      created.incrementAndGet();
+      return content.clone();
+    });
+    assertThat(second, is(sameInstance(first)));
+    assertThat(created.get(), is(1));
+    assertThat(sharedContent.references(key), is(2));
+
+    sharedContent.release(key);
+    assertThat(sharedContent.references(key), is(1));
+    assertThat(sharedContent.size(), is(1));
+
+    sharedContent.release(key);
+    assertThat(sharedContent.references(key), is(0));
+    assertThat(sharedContent.size(), is(0));
+
+    // releasing an unknown key is a no-op
+    sharedContent.release(key);
+    assertThat(sharedContent.size(), is(0));
+  }
+
+  @Test
+  public void sha256() {
+    assertThat(SharedContent.sha256(new byte[0]),
+        is("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855"));
+  }
+}
@@ -18,6 +18,8 @@ import org.folio.util.SamlConfigurationHelper;
 import org.folio.util.SamlConfigurationUtil;
 import org.folio.util.model.OkapiHeaders;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.startsWith;
 import org.junit.After;
 import org.junit.Before;
@@ -203,6 +205,34 @@ public class ConfigurationsDaoImplTest extends TestBase {
       }));
   }
 
+  @Test
+  public void getConfigurationCachedAndRevalidated(TestContext context) {
+    mock.setMockContent("mock_content_with_delete.json");
+    SamlConfiguration samlConfiguration = mock.getMockPartialContent();
+    createDatabaseEntry(context, samlConfiguration);
+
+    configurationsDao.getConfiguration(vertx, createOkapiHeaders(), false)
+      .compose(first -> {
+        // the caller gets a copy
+        first.setIdpUrl("https://modified.example.org");
+        return configurationsDao.getConfiguration(vertx, createOkapiHeaders(), false);
+      })
+      .compose(second -> {
+        assertThat(second.getIdpUrl(), is(samlConfiguration.getIdpUrl()));
+        // changed without the DAO, for example by another module instance
+        return PostgresClient.getInstance(vertx, TENANT).execute("UPDATE " + SCHEMA + ".configuration"
+            + " SET jsonb = jsonb || '{\"idp.url\": \"https://changed.example.org\"}'");
+      })
+      .compose(x -> configurationsDao.getConfiguration(vertx, createOkapiHeaders(), false))
+      .compose(third -> {
+        assertThat(third.getIdpUrl(), is("https://changed.example.org"));
+        return deleteAllConfigurationRecords(vertx);
+      })
+      .compose(x -> configurationsDao.getConfiguration(vertx, createOkapiHeaders(), false))
+      .onComplete(context.asyncAssertFailure(cause ->
+        assertThat(cause.getMessage(), startsWith("There is an empty DB"))));
+  }
+
   @Test
   public void testSamlConfigurationUpdateEmptyDatabase(TestContext context) {
     mock.setMockContent("mock_content_legacy.json");
@@ -259,6 +289,78 @@ public class ConfigurationsDaoImplTest extends TestBase {
     }));
   }
 
+  @Test
+  public void testSamlConfigurationConcurrentUpdates(TestContext context) {
+    mock.setMockContent("mock_content_with_delete.json");
+    SamlConfiguration samlConfigurationBase = mock.getMockPartialContent();
+    createDatabaseEntry(context, samlConfigurationBase);
+
+    Future<SamlConfiguration> keystore = configurationsDao.storeEntry(vertx, createOkapiHeaders(),
+        Map.of(SamlConfiguration.KEYSTORE_FILE_CODE, "keystore"));
+    Future<SamlConfiguration> invalidated = configurationsDao.storeEntry(vertx, createOkapiHeaders(),
+        Map.of(SamlConfiguration.METADATA_INVALIDATED_CODE, "false"));
+
+    Future.all(keystore, invalidated)
+      .compose(x -> configurationsDao.getConfiguration(vertx, createOkapiHeaders(), false))
+      .onComplete(context.asyncAssertSuccess(result -> {
+        // neither update has overwritten the other one
+        assertThat(result.getKeystore(), is("keystore"));
+        assertThat(result.getMetadataInvalidated(), is("false"));
+        assertThat(result.getIdpUrl(), is(samlConfigurationBase.getIdpUrl()));
+      }));
+  }
+
+  @Test
+  public void testSamlConfigurationInterleavedWriters(TestContext context) {
+    mock.setMockContent("mock_content_with_delete.json");
+    createDatabaseEntry(context, mock.getMockPartialContent());
+    OkapiHeaders headers = createOkapiHeaders();
+
+    // both writers read the same version, the second write would overwrite the first one
+    Future.all(configurationsDao.getConfiguration(vertx, headers, false),
+        configurationsDao.getConfiguration(vertx, headers, false))
+      .compose(read -> {
+        SamlConfiguration first = read.resultAt(0);
+        SamlConfiguration second = read.resultAt(1);
+        first.setSamlAttribute("first");
+        second.setUserProperty("second");
+        return configurationsDaoImpl.storeEntry(vertx, headers, first)
+          .compose(x -> configurationsDaoImpl.storeEntry(vertx, headers, second));
+      })
+      .onComplete(context.asyncAssertFailure(e ->
+          assertThat(e, is(instanceOf(ConfigurationsDao.ConfigurationConflictException.class)))))
+      .recover(e -> configurationsDao.updateSamlConfiguration(vertx, headers, config -> {
+        config.setUserProperty("second");
+        return config;
+      }))
+      .onComplete(context.asyncAssertSuccess(result -> {
+        assertThat(result.getSamlAttribute(), is("first"));
+        assertThat(result.getUserProperty(), is("second"));
+      }));
+  }
+
+  @Test
+  public void testSamlConfigurationConcurrentReadModifyWrite(TestContext context) {
+    mock.setMockContent("mock_content_with_delete.json");
+    createDatabaseEntry(context, mock.getMockPartialContent());
+    OkapiHeaders headers = createOkapiHeaders();
+
+    Future.all(
+        configurationsDao.updateSamlConfiguration(vertx, headers, config -> {
+          config.setSamlAttribute("first");
+          return config;
+        }),
+        configurationsDao.updateSamlConfiguration(vertx, headers, config -> {
+          config.setUserProperty("second");
+          return config;
+        }))
+      .compose(x -> configurationsDao.getConfiguration(vertx, headers, false))
+      .onComplete(context.asyncAssertSuccess(result -> {
+        assertThat(result.getSamlAttribute(), is("first"));
+        assertThat(result.getUserProperty(), is("second"));
+      }));
+  }
+
   private static OkapiHeaders createOkapiHeaders(){
     Map<String, String> parsedHeaders = new HashMap<String, String>();
     parsedHeaders.put(TENANT_HEADER.getName(), TENANT_HEADER.getValue());
@@ -0,0 +1,129 @@
+package org.folio.metrics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThrows;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import javax.ws.rs.core.Response;
+import org.folio.rest.tools.utils.NetworkUtils;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class SamlMetricsTest {
+
+  private static Vertx vertx = Vertx.vertx();
+
+  @AfterClass
+  public static void afterOnce(TestContext context) {
+    vertx.close(context.asyncAssertSuccess());
+  }
+
+  private static long phaseCount(String tenant, String outcome) {
+    Timer timer = SamlMetrics.getRegistry().find("saml.phase")
+        .tags("phase", "users", "tenant", tenant, "outcome", outcome).timer();
+    return timer == null ? 0 : timer.count();
+  }
+
+  private static double errorCount(String where, String tenant, String exception) {
+    Counter counter = SamlMetrics.getRegistry().find("saml.errors")
+        .tags("where", where, "tenant", tenant, "exception", exception).counter();
+    return counter == null ? 0 : counter.count();
+  }
+
+  @Test
+  public void time(TestContext context) {
+    SamlMetrics.time(SamlMetrics.Phase.USERS, "timetenant", () -> Future.succeededFuture("x"))
+      .compose(x -> SamlMetrics.time(SamlMetrics.Phase.USERS, "timetenant",
+          () -> Future.failedFuture(new IllegalStateException("boom"))))
+      .onComplete(context.asyncAssertFailure(e -> {
+        assertThat(phaseCount("timetenant", "success"), is(1L));
+        assertThat(phaseCount("timetenant", "failure"), is(1L));
+        assertThat(errorCount("users", "timetenant", "IllegalStateException"), is(1.0));
+      }));
+  }
+
+  @Test
+  public void timeThrows() {
+    assertThrows(IllegalArgumentException.class, () ->
+        SamlMetrics.time(SamlMetrics.Phase.USERS, "throwtenant", () -> {
+          throw new IllegalArgumentException();
+        }));
+    assertThat(phaseCount("throwtenant", "failure"), is(1L));
+  }
+
+  @Test
+  public void timeSync() {
+    assertThat(SamlMetrics.timeSync(SamlMetrics.Phase.USERS, "synctenant", () -> 5), is(5));
+    assertThat(phaseCount("synctenant", "success"), is(1L));
+  }
+
+  @Test
+  public void timeSyncUnknownTenant() {
+    long before = phaseCount(SamlMetrics.UNKNOWN_TENANT, "success");
+    SamlMetrics.timeSync(SamlMetrics.Phase.USERS, null, () -> 5);
+    assertThat(phaseCount(SamlMetrics.UNKNOWN_TENANT, "success"), is(before + 1));
+  }
+
+  @Test
+  public void timeRequest(TestContext context) {
+    SamlMetrics.timeRequest("check", "requesttenant", context.asyncAssertSuccess(response ->
+        assertThat(response.getStatus(), is(200))))
+      .handle(Future.succeededFuture(Response.ok().build()));
+    Timer timer = SamlMetrics.getRegistry().find("saml.requests")
+        .tags("endpoint", "check", "tenant", "requesttenant", "status", "200").timer();
+    assertThat(timer.count(), is(1L));
+  }
+
+  @Test
+  public void scrape() {
+    SamlMetrics.timeSync(SamlMetrics.Phase.COOKIE_REDIRECT, "scrapetenant", () -> 5);
+    String scrape = SamlMetrics.scrape();
+    assertThat(scrape, containsString("saml_phase_seconds_count{outcome=\"success\",phase=\"cookie_redirect\",tenant=\"scrapetenant\"} 1"));
+    assertThat(scrape, containsString("saml_client_cache_total{result=\"hit\"}"));
+    assertThat(scrape, containsString("jvm_memory_used_bytes"));
+  }
+
+  @Test
+  public void metricsServer(TestContext context) {
+    int port = NetworkUtils.nextFreePort();
+    var client = vertx.createHttpClient();
+    MetricsServer.start(vertx, Integer.toString(port))
+      .compose(server -> client.request(HttpMethod.GET, port, "localhost", MetricsServer.PATH))
+      .compose(request -> request.send())
+      .compose(response -> {
+        assertThat(response.statusCode(), is(200));
+        assertThat(response.getHeader("Content-Type"), is(MetricsServer.CONTENT_TYPE));
+        return response.body();
+      })
+      .compose(body -> {
+        assertThat(body.toString(), containsString("saml_client_cache_total"));
+        return client.request(HttpMethod.GET, port, "localhost", "/foo");
+      })
+      .compose(request -> request.send())
+      .onComplete(context.asyncAssertSuccess(response -> assertThat(response.statusCode(), is(404))));
+  }
+
+  @Test
+  public void metricsServerNotStarted(TestContext context) {
+    MetricsServer.start(vertx, null)
+      .onComplete(context.asyncAssertSuccess(server -> assertThat(server, is(nullValue()))));
+  }
+
+  @Test
+  public void metricsServerBadPort(TestContext context) {
+    MetricsServer.start(vertx, "x")
+      .onComplete(context.asyncAssertFailure(e ->
+        assertThat(e.getMessage(), is("Bad value of environmental variable METRICS_PORT: \"x\""))));
+  }
+}
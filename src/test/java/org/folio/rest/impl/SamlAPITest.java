@@ -19,6 +19,8 @@ import java.io.UncheckedIOException;
 import java.net.URI;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.List;
 import java.util.Objects;
 import java.util.Map;
@@ -30,10 +32,19 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.Optional;
+import org.folio.config.AuthnRequestTemplate;
+import org.folio.config.ClientLoadBreaker;
+import org.folio.config.ConfigurationChangeListener;
+import org.folio.config.DistributedReplayCache;
+import org.folio.config.KeystoreCredentialCache;
+import org.folio.config.SamlCheckCache;
 import org.folio.config.SamlClientLoader;
 import org.folio.config.SamlConfigHolder;
+import org.folio.metrics.SamlMetrics;
 import org.folio.rest.jaxrs.model.SamlConfigRequest;
+import org.folio.rest.persist.PostgresClient;
 import org.folio.rest.tools.utils.NetworkUtils;
+import org.folio.service.UserLookupCache;
 import org.folio.service.UserService;
 import org.folio.util.*;
 import org.junit.After;
@@ -52,6 +63,7 @@ import org.pac4j.core.profile.BasicUserProfile;
 import org.pac4j.core.profile.UserProfile;
 import org.pac4j.core.redirect.RedirectionActionBuilder;
 import org.pac4j.saml.client.SAML2Client;
+import org.pac4j.saml.exceptions.SAMLReplayException;
 import org.w3c.dom.ls.LSResourceResolver;
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
@@ -64,6 +76,7 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
 import io.vertx.ext.web.client.WebClient;
@@ -135,9 +148,28 @@ public class SamlAPITest extends TestBase {
   public void tearDown() {
     // Need to clear singleton to maintain test order independence
     SamlConfigHolder.getInstance().removeClient(TENANT);
+    ClientLoadBreaker.getInstance().reset(TENANT);
+    SamlCheckCache.getInstance().invalidate(TENANT);
     deleteAllConfigurationRecords(vertx);
   }
 
+  @Test
+  public void loginWithOpenBreaker() {
+    for (int i = 0; i < ClientLoadBreaker.DEFAULT_THRESHOLD; i++) {
+      ClientLoadBreaker.getInstance().onFailure(TENANT);
+    }
+    given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .header(JSON_CONTENT_TYPE_HEADER)
+      .body(new JsonObject().put("stripesUrl", STRIPES_URL).encode())
+      .post("/saml/login")
+      .then()
+      .statusCode(503)
+      .header("Retry-After", String.valueOf(ClientLoadBreaker.DEFAULT_RETRY_INTERVAL));
+  }
+
   @Test
   public void checkEndpointTests() {
     // bad
@@ -166,6 +198,9 @@ public class SamlAPITest extends TestBase {
       .statusCode(200)
       .body(matchesJsonSchemaInClasspath("ramls/schemas/SamlCheck.json"))
       .body("active", equalTo(true));
+
+    // published clients are initialized
+    assertThat(SamlConfigHolder.getInstance().findClient(TENANT).getClient().isInitialized(), is(true));
   }
 
   @Test
@@ -262,6 +297,130 @@ public class SamlAPITest extends TestBase {
   }
 
 
+  private static void login() {
+    given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .header(JSON_CONTENT_TYPE_HEADER)
+      .body("{\"stripesUrl\":\"" + STRIPES_URL + "\"}")
+      .post("/saml/login")
+      .then()
+      .statusCode(200);
+  }
+
+  @Test
+  public void loginLoadSharesPrng() {
+    login();
+    // Vert.x numbers its timers consecutively
+    long timerBefore = vertx.setTimer(1, x -> { });
+    for (int i = 0; i < 200; i++) {
+      login();
+    }
+    long timerAfter = vertx.setTimer(1, x -> { });
+    // timerAfter itself, but no PRNG and therefore no reseed timer per login
+    assertThat(timerAfter - timerBefore, is(lessThanOrEqualTo(2L)));
+  }
+
+  private static String loginSamlRequest() {
+    String samlRequest = given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .header(JSON_CONTENT_TYPE_HEADER)
+      .body("{\"stripesUrl\":\"" + STRIPES_URL + "\"}")
+      .post("/saml/login")
+      .then()
+      .statusCode(200)
+      .body("bindingMethod", equalTo("POST"))
+      .extract().body().jsonPath().getString("samlRequest");
+    return new String(Base64.getDecoder().decode(samlRequest), StandardCharsets.UTF_8);
+  }
+
+  private static String withoutIdAndInstant(String authnRequest) {
+    return authnRequest
+        .replaceFirst(" ID=\"[^\"]*\"", " ID=\"\"")
+        .replaceFirst(" IssueInstant=\"[^\"]*\"", " IssueInstant=\"\"");
+  }
+
+  @Test
+  public void loginAuthnRequestTemplate() {
+    AuthnRequestTemplate.setEnabled("true");
+    try {
+      String first = loginSamlRequest();
+      assertThat(SamlConfigHolder.getInstance().findClient(TENANT).getAuthnRequestTemplate(), is(notNullValue()));
+      String second = loginSamlRequest();
+      String third = loginSamlRequest();
+      assertThat(second, is(not(first)));
+      assertThat(third, is(not(second)));
+      assertThat(withoutIdAndInstant(second), is(withoutIdAndInstant(first)));
+      assertThat(withoutIdAndInstant(third), is(withoutIdAndInstant(first)));
+    } finally {
+      AuthnRequestTemplate.setEnabled(null);
+    }
+  }
+
+  @Test
+  public void loginAuthnRequestTemplateDisabled() {
+    loginSamlRequest();
+    loginSamlRequest();
+    assertThat(SamlConfigHolder.getInstance().findClient(TENANT).getAuthnRequestTemplate(), is(nullValue()));
+  }
+
+  @Test
+  public void authnRequestTemplateBadValue() {
+    assertThrows(IllegalArgumentException.class, () -> AuthnRequestTemplate.setEnabled("yes"));
+  }
+
+  @Test
+  public void loginAfterEvictionReusesKeystore() {
+    login();
+    KeystoreCredentialCache cache = KeystoreCredentialCache.getInstance();
+    long hits = cache.getHits();
+    long misses = cache.getMisses();
+    SamlConfigHolder.getInstance().removeClient(TENANT);
+    login();
+    assertThat(cache.getHits(), is(hits + 1));
+    assertThat(cache.getMisses(), is(misses));
+  }
+
+  @Test
+  public void configurationChangeOfOtherInstanceDropsClient(TestContext context) {
+    login();
+    var client = SamlConfigHolder.getInstance().findClient(TENANT);
+    assertThat(client, is(notNullValue()));
+
+    // like a PUT /saml/configuration served by another module instance
+    Async async = context.async();
+    PostgresClient.getInstance(vertx, TENANT)
+      .execute("UPDATE " + SCHEMA + ".configuration SET jsonb = jsonb || '{\"saml.attribute\": \"mail\"}'")
+      .onComplete(context.asyncAssertSuccess(x -> vertx.setPeriodic(20, timer -> {
+        if (SamlConfigHolder.getInstance().findClient(TENANT) != client) {
+          vertx.cancelTimer(timer);
+          async.complete();
+        }
+      })));
+  }
+
+  @Test
+  public void replayOnOtherInstanceRejected(TestContext context) {
+    var replayCache = DistributedReplayCache.getInstance();
+    var expires = Instant.now().plusSeconds(60);
+    // like the same message validated by this and another module instance
+    var first = new DistributedReplayCache.Check("replayed-id", expires);
+    var second = new DistributedReplayCache.Check("replayed-id", expires);
+
+    replayCache.confirm(vertx, TENANT, first)
+      .compose(x -> replayCache.confirm(vertx, TENANT, second))
+      .onComplete(context.asyncAssertFailure(e -> assertThat(e, is(instanceOf(SAMLReplayException.class)))));
+  }
+
+  @Test
+  public void replayCheckMissingRejected(TestContext context) {
+    DistributedReplayCache.getInstance().confirm(vertx, TENANT, (DistributedReplayCache.Check) null)
+      .onComplete(context.asyncAssertFailure(e -> assertThat(e, is(instanceOf(SAMLReplayException.class)))));
+  }
+
   @Test
   public void loginCorsTests() {
     String origin = "http://localhost";
@@ -526,6 +685,69 @@ public class SamlAPITest extends TestBase {
     assertNotEquals(metadata, regeneratedMetadata);
   }
 
+  @Test
+  public void metadataEndpoint() {
+    var response = given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .get("/saml/metadata")
+      .then()
+      .statusCode(200)
+      .contentType(ContentType.XML)
+      .header("Cache-Control", "no-cache")
+      .extract();
+    String etag = response.header("ETag");
+    assertThat(etag, startsWith("\""));
+
+    given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .header("If-None-Match", "\"other\", " + etag)
+      .get("/saml/metadata")
+      .then()
+      .statusCode(304)
+      .header("ETag", etag);
+
+    String fileContent = given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .get("/saml/regenerate")
+      .then()
+      .statusCode(200)
+      .extract().path("fileContent");
+
+    // regenerate replaces the cached metadata
+    given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .get("/saml/metadata")
+      .then()
+      .statusCode(200)
+      .body(is(new String(Base64.getDecoder().decode(fileContent), StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void regenerateKeepsClient(TestContext context) {
+    given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .get("/saml/regenerate")
+      .then()
+      .statusCode(200);
+    var client = SamlConfigHolder.getInstance().findClient(TENANT);
+    assertThat(client, is(notNullValue()));
+
+    // the regenerate has stored metadata.invalidated = false, the notification must not drop the client
+    ConfigurationChangeListener.revalidate(vertx, TENANT)
+      .onComplete(context.asyncAssertSuccess(x ->
+          assertThat(SamlConfigHolder.getInstance().findClient(TENANT), is(sameInstance(client)))));
+  }
+
   @Test
   public void callbackEndpointTests_LegacyDB(TestContext context) {//former method: void callbackEndpointTests_Legacy()
     mock.setMockContent("mock_content_legacy.json");
@@ -615,6 +837,64 @@ public class SamlAPITest extends TestBase {
         "/saml/callback-with-expiry");
   }
 
+  private static double speculationCount(String result) {
+    var counter = SamlMetrics.getRegistry().find("saml.users.speculation")
+        .tags("tenant", TENANT, "result", result).counter();
+    return counter == null ? 0 : counter.count();
+  }
+
+  @Test
+  public void callbackSpeculativeUserLookup(TestContext context) {
+    double used = speculationCount("used");
+    UserService.setSpeculativeUserLookup("true");
+    try {
+      assertCallbackSuccess(context,
+          "=== Test Callback with speculative user lookup - success ===",
+          "mock_content.json",
+          "/saml/callback-with-expiry");
+    } finally {
+      UserService.setSpeculativeUserLookup(null);
+    }
+    assertThat(speculationCount("used"), is(used + 1));
+  }
+
+  @Test
+  public void callbackSpeculativeUserLookupForConsortium(TestContext context) {
+    double wasted = speculationCount("wasted");
+    UserService.setSpeculativeUserLookup("true");
+    try {
+      assertCallbackSuccess(context,
+          "=== Test Callback with speculative user lookup for enabled consortium - success ===",
+          "mock_one_user_tenant.json",
+          "/saml/callback-with-expiry");
+    } finally {
+      UserService.setSpeculativeUserLookup(null);
+    }
+    assertThat(speculationCount("wasted"), is(wasted + 1));
+  }
+
+  @Test
+  public void callbackUserLookupCache(TestContext context) {
+    var cache = UserLookupCache.getInstance();
+    long hits = cache.getHits();
+    cache.setTtl("60");
+    try {
+      assertCallbackSuccess(context, "=== Test Callback with user cache - miss ===",
+          "mock_one_user_tenant.json", "/saml/callback-with-expiry");
+      assertCallbackSuccess(context, "=== Test Callback with user cache - hit ===",
+          "mock_one_user_tenant.json", "/saml/callback-with-expiry");
+      assertThat(cache.getHits(), is(hits + 1));
+    } finally {
+      cache.setTtl("0");
+    }
+  }
+
+  @Test
+  public void speculativeUserLookupBadValue() {
+    assertThrows(IllegalArgumentException.class, () -> UserService.setSpeculativeUserLookup("yes"));
+    assertThat(UserService.isSpeculativeUserLookup(), is(false));
+  }
+
   @Test
   public void callbackEndpointTests(TestContext context) {
     // Default. No configuration needed. /saml/callback-with-expiry returns RTR tokens.
@@ -930,6 +1210,36 @@ public class SamlAPITest extends TestBase {
       .body(containsString("Cannot get configuration"));
   }
 
+  private static void check(boolean active) {
+    given()
+      .header(TENANT_HEADER)
+      .header(TOKEN_HEADER)
+      .header(OKAPI_URL_HEADER)
+      .get("/saml/check")
+      .then()
+      .statusCode(200)
+      .body("active", equalTo(active));
+  }
+
+  @Test
+  public void checkEndpointCachesInactive(TestContext context) {
+    mock.setMockContent("mock_noidp.json");
+    dataMigrationHelper.dataMigrationCompleted(vertx, context, false);
+
+    long misses = SamlConfigHolder.getInstance().getMisses();
+    check(false);
+    check(false);
+    check(false);
+    // only the first check tried to load the client
+    assertThat(SamlConfigHolder.getInstance().getMisses() - misses, is(1L));
+
+    // a loaded client answers the check
+    mock.setMockContent("mock_content.json");
+    dataMigrationHelper.dataMigrationCompleted(vertx, context, false);
+    login();
+    check(true);
+  }
+
   @Test
   public void regenerateEndpointNoIdPDB(TestContext context) { //former method: void regenerateEndpointNoIdP()
     mock.setMockContent("mock_noidp.json");
@@ -1130,6 +1440,7 @@ public class SamlAPITest extends TestBase {
 
     // not found ..
     mock.setMockContent("mock_400.json");
+    var client = SamlConfigHolder.getInstance().findClient(TENANT);
     given()
       .header(TENANT_HEADER)
       .header(TOKEN_HEADER)
@@ -1141,6 +1452,8 @@ public class SamlAPITest extends TestBase {
       .then()
       .statusCode(500)
       .body(is("Response status code 404 is not equal to 200"));
+    // a /users failure is no client failure
+    assertThat(SamlConfigHolder.getInstance().findClient(TENANT), is(sameInstance(client)));
 
     mock.setMockContent("mock_nouser.json");
     given()
@@ -0,0 +1,94 @@
+package org.folio.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThrows;
+
+import io.vertx.core.json.JsonObject;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class UserLookupCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final UserLookupCache cache = new UserLookupCache(now::get);
+
+  private static JsonObject user(String id, boolean active) {
+    return new JsonObject().put("id", id).put("username", "name-" + id).put("active", active);
+  }
+
+  @Test
+  public void disabledByDefault() {
+    cache.put("diku", "username", "a", user("1", true), "diku");
+    assertThat(cache.isEnabled(), is(false));
+    assertThat(cache.get("diku", "username", "a"), is(nullValue()));
+    assertThat(cache.getMisses(), is(0L));
+  }
+
+  @Test
+  public void hitAndExpiry() {
+    cache.setTtl("60");
+    cache.put("diku", "username", "a", user("1", true), "member");
+    var cached = cache.get("diku", "username", "a");
+    assertThat(cached.getTenant(), is("member"));
+    assertThat(cached.toJson(), is(user("1", true)));
+    assertThat(cache.get("diku", "barcode", "a"), is(nullValue()));
+    assertThat(cache.get("other", "username", "a"), is(nullValue()));
+
+    now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+    assertThat(cache.get("diku", "username", "a").getTenant(), is("member"));
+    now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertThat(cache.get("diku", "username", "a"), is(nullValue()));
+    assertThat(cache.getHits(), is(2L));
+    assertThat(cache.getMisses(), is(3L));
+  }
+
+  @Test
+  public void inactiveNotCached() {
+    cache.setTtl("60");
+    cache.put("diku", "username", "a", user("1", false), "diku");
+    assertThat(cache.get("diku", "username", "a"), is(nullValue()));
+  }
+
+  @Test
+  public void leastRecentlyUsedDropped() {
+    cache.setSize("2");
+    cache.setTtl("60");
+    cache.put("diku", "username", "a", user("1", true), "diku");
+    cache.put("diku", "username", "b", user("2", true), "diku");
+    cache.get("diku", "username", "a");
+    cache.put("diku", "username", "c", user("3", true), "diku");
+    cache.put("other", "username", "d", user("4", true), "other");
+    assertThat(cache.get("diku", "username", "b"), is(nullValue()));
+    assertThat(cache.get("diku", "username", "a").toJson().getString("id"), is("1"));
+    assertThat(cache.get("diku", "username", "c").toJson().getString("id"), is("3"));
+    assertThat(cache.get("other", "username", "d").toJson().getString("id"), is("4"));
+  }
+
+  @Test
+  public void invalidate() {
+    cache.setTtl("60");
+    cache.put("diku", "username", "a", user("1", true), "diku");
+    cache.put("diku", "username", "b", user("2", true), "diku");
+    cache.put("other", "username", "a", user("3", true), "other");
+    cache.invalidate("diku", "username", "a");
+    assertThat(cache.get("diku", "username", "a"), is(nullValue()));
+    assertThat(cache.get("diku", "username", "b").toJson().getString("id"), is("2"));
+    cache.invalidate("diku");
+    assertThat(cache.get("diku", "username", "b"), is(nullValue()));
+    assertThat(cache.get("other", "username", "a").toJson().getString("id"), is("3"));
+    cache.setTtl("0");
+    assertThat(cache.get("other", "username", "a"), is(nullValue()));
+  }
+
+  @Test
+  public void badValues() {
+    assertThrows(NumberFormatException.class, () -> cache.setTtl("x"));
+    assertThrows(NumberFormatException.class, () -> cache.setTtl("-1"));
+    assertThrows(NumberFormatException.class, () -> cache.setSize("0"));
+    var e = assertThrows(NumberFormatException.class, () -> cache.setSize("-5"));
+    assertThat(e.getMessage(), is("Bad value of environmental variable USER_CACHE_SIZE: \"-5\""));
+  }
+}
@@ -0,0 +1,74 @@
+package org.folio.session;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.ext.auth.PRNG;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class RelayStateSessionTest {
+
+  @Test
+  public void data() {
+    Vertx vertx = Vertx.vertx();
+    try {
+      RelayStateSession session = new RelayStateSession(vertx);
+      assertThat(session.isEmpty(), is(true));
+      session.put("relay", "abc").putIfAbsent("relay", "def").computeIfAbsent("other", k -> "x");
+      assertThat(session.get("relay"), is("abc"));
+      assertThat(session.get("other"), is("x"));
+      assertThat(session.remove("other"), is("x"));
+      session.put("relay", null);
+      assertThat(session.get("relay"), is(nullValue()));
+      String id = session.id();
+      assertThat(id.length(), is(32));
+      assertThat(session.id(), is(id));
+      assertThat(session.regenerateId().id(), is(not(id)));
+    } finally {
+      vertx.close();
+    }
+  }
+
+  @Test
+  public void onePrngUnderLoad(TestContext context) {
+    Vertx vertx = Vertx.vertx();
+    Set<PRNG> prngs = ConcurrentHashMap.newKeySet();
+    Set<String> ids = ConcurrentHashMap.newKeySet();
+    List<Future<Void>> futures = new ArrayList<>();
+    // 4 contexts like 4 verticle instances, 10000 login sessions each
+    for (int i = 0; i < 4; i++) {
+      futures.add(vertx.executeBlocking(() -> {
+        for (int j = 0; j < 10000; j++) {
+          ids.add(new RelayStateSession(vertx).id());
+          prngs.add(RelayStateSession.prng(vertx));
+        }
+        return null;
+      }, false));
+    }
+    Future.all(futures)
+      .onComplete(context.asyncAssertSuccess(x -> {
+        assertThat(prngs.size(), is(1));
+        assertThat(ids.size(), is(40000));
+      }))
+      .compose(x -> vertx.close())
+      .onComplete(context.asyncAssertSuccess(x -> {
+        // closing Vert.x drops its PRNG, a new Vert.x gets a new one
+        Vertx vertx2 = Vertx.vertx();
+        assertThat(RelayStateSession.prng(vertx2), is(not(sameInstance(prngs.iterator().next()))));
+        vertx2.close(context.asyncAssertSuccess());
+      }));
+  }
+}
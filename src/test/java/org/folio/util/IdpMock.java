@@ -15,6 +15,13 @@ import org.apache.logging.log4j.Logger;
 
 public class IdpMock extends AbstractVerticle {
   private static final Logger log = LogManager.getLogger(IdpMock.class);
+  public static final long SLOW_MILLIS = 2000;
+  public static final String ETAG = "\"meta-idp-1\"";
+  public static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+  /** number of SP EntityDescriptors of the /large aggregate, it has a single IdP */
+  public static final int LARGE_SP_ENTITIES = 20000;
+
+  private String largeAggregate;
 
   public void start(Promise<Void> promise) {
     final int port = context.config().getInteger("http.port");
@@ -24,6 +31,9 @@ public class IdpMock extends AbstractVerticle {
 
     router.route("/xml").handler(this::handleXml);
     router.route("/json").handler(this::handleJson);
+    router.route("/slow").handler(this::handleSlow);
+    router.route("/etag").handler(this::handleEtag);
+    router.route("/large").handler(this::handleLarge);
     router.route("/").handler(this::handleNoContentType);
     log.info("Running IdpMock on port {}", port);
     server.requestHandler(router).listen(port).<Void>mapEmpty().onComplete(promise);
@@ -41,6 +51,64 @@ public class IdpMock extends AbstractVerticle {
     handle(context, "application/json");
   }
 
+  /**
+   * Non-blocking slow IdP: responds after {@link #SLOW_MILLIS}.
+   */
+  private void handleSlow(RoutingContext context) {
+    vertx.setTimer(SLOW_MILLIS, x -> handle(context, "application/xml"));
+  }
+
+  /**
+   * Supports conditional GET: 304 Not Modified if If-None-Match is {@link #ETAG}.
+   */
+  private void handleEtag(RoutingContext context) {
+    context.response()
+      .putHeader("ETag", ETAG)
+      .putHeader("Last-Modified", LAST_MODIFIED);
+    if (ETAG.equals(context.request().getHeader("If-None-Match"))) {
+      context.response().setStatusCode(304).end();
+      return;
+    }
+    handle(context, "application/xml");
+  }
+
+  /**
+   * Federation aggregate of many MB: the IdP of meta-idp.xml and {@link #LARGE_SP_ENTITIES} SPs.
+   */
+  private void handleLarge(RoutingContext context) {
+    try {
+      if (largeAggregate == null) {
+        largeAggregate = largeAggregate(readMockData());
+      }
+      context.response()
+        .setStatusCode(200)
+        .putHeader("Content-Type", "application/xml")
+        .end(largeAggregate);
+    } catch (Exception e) {
+      context.response()
+        .setStatusCode(500)
+        .end(e.getMessage());
+    }
+  }
+
+  private static String largeAggregate(String idpMetadata) {
+    StringBuilder xml = new StringBuilder(LARGE_SP_ENTITIES * 600)
+        .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<md:EntitiesDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\">\n")
+        .append(idpMetadata.substring(idpMetadata.indexOf("?>") + 2));
+    for (int i = 0; i < LARGE_SP_ENTITIES; i++) {
+      xml.append("  <md:EntityDescriptor entityID=\"https://sp").append(i).append(".example.org/sp\">\n")
+          .append("    <md:SPSSODescriptor protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\">\n")
+          .append("      <md:AssertionConsumerService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST\"")
+          .append(" Location=\"https://sp").append(i).append(".example.org/saml/callback\" index=\"0\"/>\n")
+          .append("      <md:AssertionConsumerService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-Redirect\"")
+          .append(" Location=\"https://sp").append(i).append(".example.org/saml/callback\" index=\"1\"/>\n")
+          .append("    </md:SPSSODescriptor>\n")
+          .append("  </md:EntityDescriptor>\n");
+    }
+    return xml.append("</md:EntitiesDescriptor>\n").toString();
+  }
+
   private void handle(RoutingContext context, String contentType) {
     try {
       String idpMetadata = readMockData();